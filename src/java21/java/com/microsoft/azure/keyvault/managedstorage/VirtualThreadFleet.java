@@ -0,0 +1,85 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+
+/**
+ * Runs many instances of the blocking sample workflows at once, each on its own virtual thread.
+ *
+ * Every workflow instance creates its own storage account and vault. All instances run in one structured task
+ * scope, so the first failure cancels the others and fails the run. Pass "serial" as the mode to run the same
+ * workflows one after another, as Main does, and compare the throughput.
+ *
+ * Only built by the virtual-threads profile. The workflows share one sign in and one set of resource managers, but
+ * large fleets are still meant to run against the mock (AZURE_SAMPLES_MOCK=true).
+ */
+public class VirtualThreadFleet {
+
+    public static void main(String[] args) throws Exception {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        boolean serial = args.length > 1 && "serial".equals(args[1]);
+
+        List<Callable<Void>> workflows = new ArrayList<>();
+        for (int i = 0; i < fleetSize; i++) {
+            workflows.add(VirtualThreadFleet::runManagedStorageWorkflow);
+            workflows.add(VirtualThreadFleet::runSasWorkflow);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (serial) {
+                runSerially(workflows);
+            } else {
+                runOnVirtualThreads(workflows);
+            }
+        } finally {
+            AccessTokenUtils.shutdown();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        System.out.printf("Ran %d workflows %s in %d ms, %.1f workflows per second%n", workflows.size(),
+                serial ? "serially" : "on virtual threads", elapsed.toMillis(),
+                workflows.size() * 1000.0 / Math.max(1, elapsed.toMillis()));
+        if (KeyVaultSampleBase.mockHttpClient != null) {
+            System.out.printf("The mock served %d requests, %d of them throttled%n",
+                    KeyVaultSampleBase.mockHttpClient.requestCount(), KeyVaultSampleBase.mockHttpClient.throttledCount());
+        }
+        SampleMetrics.shared().print(System.out);
+    }
+
+    // Each workflow gets a virtual thread of its own; the scope interrupts the rest as soon as one fails.
+    private static void runOnVirtualThreads(List<Callable<Void>> workflows) throws InterruptedException, ExecutionException {
+        try (StructuredTaskScope.ShutdownOnFailure scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            for (Callable<Void> workflow : workflows) {
+                scope.fork(workflow);
+            }
+            scope.join().throwIfFailed();
+        }
+    }
+
+    private static void runSerially(List<Callable<Void>> workflows) throws Exception {
+        for (Callable<Void> workflow : workflows) {
+            workflow.call();
+        }
+    }
+
+    private static Void runManagedStorageWorkflow() {
+        KeyVaultManagedStorageSamples msakSamples = new KeyVaultManagedStorageSamples();
+        msakSamples.demonstrateStorageAccountManagement();
+        msakSamples.updateStorageAccount();
+        msakSamples.regenerateStorageAccountKeys();
+        msakSamples.getStorageAccounts();
+        msakSamples.deleteStorageAccount();
+        return null;
+    }
+
+    private static Void runSasWorkflow() throws Exception {
+        SasDefinitionSample sasDefSample = new SasDefinitionSample();
+        sasDefSample.createAccountSasDefinition();
+        sasDefSample.createBlobSasDefinition();
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpClient for the benchmarks that fails every request, so an accidental network call shows up as an error
+ * instead of skewing the numbers.
+ */
+final class OfflineHttpClient implements HttpClient {
+
+    private final AtomicLong attemptedRequests = new AtomicLong();
+
+    @Override
+    public Mono<HttpResponse> send(HttpRequest request) {
+        attemptedRequests.incrementAndGet();
+        return Mono.error(new IllegalStateException("Benchmarks run offline, refusing " + request.getHttpMethod()
+                + " " + request.getUrl()));
+    }
+
+    long attemptedRequests() {
+        return attemptedRequests.get();
+    }
+}
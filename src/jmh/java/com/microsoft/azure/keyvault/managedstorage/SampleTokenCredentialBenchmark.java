@@ -0,0 +1,142 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenRequestContext;
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures SampleTokenCredential.getToken while many threads call it, as the ARM and Key Vault pipelines do: for
+ * cached tokens, and for tokens that have expired, where the callers share one acquisition on a bounded elastic
+ * thread. Tokens come from a stub instead of Azure Active Directory, so the miss path measures the cost of sharing
+ * and handing off the acquisition rather than the token endpoint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SampleTokenCredentialBenchmark {
+
+    private final TokenRequestContext managementScope = new TokenRequestContext().addScopes("https://management.core.windows.net//.default");
+    private final TokenRequestContext vaultScope = new TokenRequestContext().addScopes("https://vault.azure.net/.default");
+    private final AtomicLong acquisitions = new AtomicLong();
+    private SampleTokenCredential credential;
+
+    @Setup
+    public void setUp() {
+        credential = new SampleTokenCredential(new SampleTokenCredential.Authenticator() {
+            @Override
+            public AuthenticationResult acquireToken(String resource) {
+                return stubResult(resource);
+            }
+
+            @Override
+            public AuthenticationResult acquireTokenByRefreshToken(String refreshToken, String resource) {
+                return stubResult(resource);
+            }
+        });
+        credential.getToken(managementScope).block();
+        credential.getToken(vaultScope).block();
+    }
+
+    // Every token is still valid at the end, so each resource must have been acquired exactly once.
+    @TearDown
+    public void tearDown() {
+        if (acquisitions.get() != 2) {
+            throw new IllegalStateException("Expected one acquisition per resource, got " + acquisitions.get());
+        }
+    }
+
+    private AuthenticationResult stubResult(String resource) {
+        acquisitions.incrementAndGet();
+        return new AuthenticationResult("Bearer", "token-for-" + resource, "refresh-token", 3600, null, null, false);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AccessToken cachedToken() {
+        return credential.getToken(managementScope).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AccessToken cachedTokensAcrossResources() {
+        credential.getToken(managementScope).block();
+        return credential.getToken(vaultScope).block();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AccessToken expiredToken(ExpiredTokens expiredTokens) {
+        return expiredTokens.getToken();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AccessToken expiredTokenContended(ExpiredTokens expiredTokens) {
+        return expiredTokens.getToken();
+    }
+
+    /**
+     * A credential whose tokens are expired when they are issued, so every call misses the cache.
+     */
+    @State(Scope.Benchmark)
+    public static class ExpiredTokens {
+        private final TokenRequestContext scope = new TokenRequestContext().addScopes("https://vault.azure.net/.default");
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder acquisitions = new LongAdder();
+        private SampleTokenCredential credential;
+
+        @Setup
+        public void setUp() {
+            credential = new SampleTokenCredential(new SampleTokenCredential.Authenticator() {
+                @Override
+                public AuthenticationResult acquireToken(String resource) {
+                    return expiredResult(resource);
+                }
+
+                @Override
+                public AuthenticationResult acquireTokenByRefreshToken(String refreshToken, String resource) {
+                    return expiredResult(resource);
+                }
+            });
+        }
+
+        // Concurrent misses share an acquisition, so there can never be more acquisitions than calls.
+        @TearDown
+        public void tearDown() {
+            if (acquisitions.sum() == 0 || acquisitions.sum() > calls.sum()) {
+                throw new IllegalStateException(acquisitions.sum() + " acquisitions for " + calls.sum() + " calls");
+            }
+            System.out.printf("%n%d calls shared %d acquisitions%n", calls.sum(), acquisitions.sum());
+        }
+
+        AccessToken getToken() {
+            calls.increment();
+            return credential.getToken(scope).block();
+        }
+
+        // Expired a minute ago; a token expiring now would still count as valid within the same millisecond.
+        private AuthenticationResult expiredResult(String resource) {
+            acquisitions.increment();
+            return new AuthenticationResult("Bearer", "token-for-" + resource, "refresh-token", -60, null, null, false);
+        }
+    }
+}
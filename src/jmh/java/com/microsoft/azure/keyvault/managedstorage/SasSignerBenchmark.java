@@ -0,0 +1,153 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.sas.BlobContainerSasPermission;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.common.sas.AccountSasPermission;
+import com.azure.storage.common.sas.AccountSasResourceType;
+import com.azure.storage.common.sas.AccountSasService;
+import com.azure.storage.common.sas.AccountSasSignatureValues;
+import com.azure.storage.common.sas.SasProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares SAS generation through the SDK clients, as SasDefinitionSample did before, with SasSigner and with the
+ * SasTokenCache hit path SasDefinitionSample uses now. The batch benchmarks issue URLs for BATCH_SIZE blobs, some of
+ * them in virtual directories, whose slashes are encoded in the URL like BlobClient.getBlobUrl does.
+ *
+ * Run with -prof gc to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SasSignerBenchmark {
+
+    private static final String ACCOUNT_NAME = "benchmarkaccount";
+    private static final String CONTAINER_NAME = "cloudstorageblob";
+    private static final int BATCH_SIZE = 1000;
+
+    private final AccountSasService services = AccountSasService.parse("bfqt");
+    private final AccountSasResourceType resourceTypes = AccountSasResourceType.parse("sco");
+    private final AccountSasPermission accountPermissions = AccountSasPermission.parse("rwdlacup");
+    private final BlobContainerSasPermission containerPermissions = BlobContainerSasPermission.parse("acdlrw");
+    private final BlobSasPermission blobPermissions = BlobSasPermission.parse("r");
+    private final OffsetDateTime expiry = OffsetDateTime.now().plusDays(1);
+
+    private final OfflineHttpClient offlineHttpClient = new OfflineHttpClient();
+    private BlobServiceClient blobServiceClient;
+    private BlobContainerClient blobContainerClient;
+    private SasSigner.Template accountSasTemplate;
+    private SasSigner.Template containerSasTemplate;
+    private SasTokenCache sasTokenCache;
+    private SasBatchIssuer sasBatchIssuer;
+    private List<SasBatchIssuer.BlobSasRequest> batchRequests;
+
+    @Setup
+    public void setUp() {
+        String accountKey = Base64.getEncoder().encodeToString("offline-benchmark-key-material".getBytes());
+        // Generating a SAS never sends a request; the offline client makes sure of that.
+        blobServiceClient = new BlobServiceClientBuilder()
+                .endpoint("https://" + ACCOUNT_NAME + ".blob.core.windows.net")
+                .credential(new StorageSharedKeyCredential(ACCOUNT_NAME, accountKey))
+                .httpClient(offlineHttpClient)
+                .buildClient();
+        blobContainerClient = blobServiceClient.getBlobContainerClient(CONTAINER_NAME);
+
+        SasSigner signer = new SasSigner(ACCOUNT_NAME, accountKey);
+        accountSasTemplate = signer.accountSas(services, resourceTypes, accountPermissions, null);
+        containerSasTemplate = signer.containerSas(CONTAINER_NAME, containerPermissions, SasProtocol.HTTPS_HTTP);
+        sasTokenCache = new SasTokenCache(0.5, Duration.ofMinutes(5));
+        sasBatchIssuer = new SasBatchIssuer(signer, blobServiceClient.getAccountUrl(), null);
+        batchRequests = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchRequests.add(new SasBatchIssuer.BlobSasRequest(CONTAINER_NAME, blobName(i), blobPermissions, expiry));
+        }
+
+        // The comparison is only meaningful if both paths produce the same tokens.
+        if (!sdkAccountSas().equals(signerAccountSas()) || !sdkContainerSas().equals(signerContainerSas())
+                || !sdkBlobSasLoop().equals(batchBlobSas())) {
+            throw new IllegalStateException("SasSigner output differs from the SDK output");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (offlineHttpClient.attemptedRequests() != 0) {
+            throw new IllegalStateException(offlineHttpClient.attemptedRequests() + " requests were attempted while offline");
+        }
+    }
+
+    @Benchmark
+    public String sdkAccountSas() {
+        return blobServiceClient.generateAccountSas(
+                new AccountSasSignatureValues(expiry, accountPermissions, services, resourceTypes));
+    }
+
+    @Benchmark
+    public String signerAccountSas() {
+        return accountSasTemplate.sign(expiry);
+    }
+
+    @Benchmark
+    public String cachedAccountSas() {
+        return sasTokenCache.getOrIssue(ACCOUNT_NAME, "account/" + services + "/" + resourceTypes,
+                accountPermissions.toString(), null, Duration.ofDays(1), accountSasTemplate::sign);
+    }
+
+    @Benchmark
+    public String sdkContainerSas() {
+        return blobContainerClient.generateSas(
+                new BlobServiceSasSignatureValues(expiry, containerPermissions).setProtocol(SasProtocol.HTTPS_HTTP));
+    }
+
+    @Benchmark
+    public String signerContainerSas() {
+        return containerSasTemplate.sign(expiry);
+    }
+
+    @Benchmark
+    public List<String> sdkBlobSasLoop() {
+        List<String> urls = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BlobClient blobClient = blobContainerClient.getBlobClient(blobName(i));
+            urls.add(blobClient.getBlobUrl() + "?"
+                    + blobClient.generateSas(new BlobServiceSasSignatureValues(expiry, blobPermissions)));
+        }
+        return urls;
+    }
+
+    @Benchmark
+    public List<String> batchBlobSas() {
+        return sasBatchIssuer.issue(batchRequests);
+    }
+
+    // Every other blob is in a virtual directory, as the report URLs issued by the samples are.
+    private static String blobName(int i) {
+        return i % 2 == 0 ? "reports/report" + i + ".csv" : "blob" + i;
+    }
+}
@@ -0,0 +1,72 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountEncryptionKeySource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Filters a synthetic list of storage accounts down to the ones managed by one vault: the client-side scan
+ * getStorageAccounts() used to do, building the StorageAccountInventory index, and looking up a built index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageAccountInventoryBenchmark {
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({"16"})
+    public int vaults;
+
+    private List<StorageAccount> storageAccounts;
+    private String vaultUri;
+    private Map<String, List<StorageAccount>> index;
+
+    @Setup
+    public void setUp() {
+        storageAccounts = StubStorageAccounts.create(accounts, vaults);
+        vaultUri = StubStorageAccounts.vaultUri(vaults / 2);
+        index = StorageAccountInventory.index(StorageAccountInventory.vaultManaged(Flux.fromIterable(storageAccounts))).block();
+        if (indexedLookup().size() != clientSideScan().size() || clientSideScan().isEmpty()) {
+            throw new IllegalStateException("The index and the client-side scan disagree");
+        }
+    }
+
+    @Benchmark
+    public List<StorageAccount> clientSideScan() {
+        return storageAccounts.stream()
+                .filter(storageAccount -> StorageAccountEncryptionKeySource.MICROSOFT_KEYVAULT.equals(storageAccount.encryptionKeySource())
+                        && vaultUri.equals(storageAccount.innerModel().encryption().keyVaultProperties().keyVaultUri()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Map<String, List<StorageAccount>> buildIndex() {
+        return StorageAccountInventory.index(StorageAccountInventory.vaultManaged(Flux.fromIterable(storageAccounts))).block();
+    }
+
+    @Benchmark
+    public List<StorageAccount> indexedLookup() {
+        return index.get(StorageAccountInventory.normalize(vaultUri));
+    }
+}
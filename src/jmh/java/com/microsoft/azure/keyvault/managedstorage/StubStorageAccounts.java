@@ -0,0 +1,85 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.util.serializer.JacksonAdapter;
+import com.azure.core.util.serializer.SerializerEncoding;
+import com.azure.resourcemanager.storage.fluent.models.StorageAccountInner;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountEncryptionKeySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds StorageAccount instances without ARM for the benchmarks. Only the members used for listing and filtering
+ * are implemented.
+ */
+final class StubStorageAccounts {
+
+    private static final String RESOURCE_GROUP_ID = "/subscriptions/00000000-0000-0000-0000-000000000000/resourceGroups/benchmark";
+
+    private StubStorageAccounts() {
+    }
+
+    static String vaultUri(int vault) {
+        return "https://benchmarkvault" + vault + ".vault.azure.net/";
+    }
+
+    /**
+     * Creates count accounts. Every fourth one uses Microsoft managed keys, the rest are spread over the vaults.
+     */
+    static List<StorageAccount> create(int count, int vaults) {
+        StorageAccountInner microsoftManaged = inner("{\"properties\":{\"encryption\":{\"keySource\":\"Microsoft.Storage\"}}}");
+        List<StorageAccountInner> vaultManaged = new ArrayList<>();
+        for (int vault = 0; vault < vaults; vault++) {
+            vaultManaged.add(inner("{\"properties\":{\"encryption\":{\"keySource\":\"Microsoft.Keyvault\","
+                    + "\"keyvaultproperties\":{\"keyname\":\"key1\",\"keyvaulturi\":\"" + vaultUri(vault) + "\"}}}}"));
+        }
+
+        List<StorageAccount> storageAccounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean managedByVault = i % 4 != 0;
+            storageAccounts.add(storageAccount("storage" + i,
+                    managedByVault ? vaultManaged.get(i / 4 % vaults) : microsoftManaged,
+                    managedByVault ? StorageAccountEncryptionKeySource.MICROSOFT_KEYVAULT : StorageAccountEncryptionKeySource.MICROSOFT_STORAGE));
+        }
+        return storageAccounts;
+    }
+
+    private static StorageAccount storageAccount(String name, StorageAccountInner inner,
+                                                 StorageAccountEncryptionKeySource keySource) {
+        String id = RESOURCE_GROUP_ID + "/providers/Microsoft.Storage/storageAccounts/" + name;
+        return (StorageAccount) Proxy.newProxyInstance(StorageAccount.class.getClassLoader(),
+                new Class<?>[]{StorageAccount.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "id":
+                            return id;
+                        case "name":
+                            return name;
+                        case "innerModel":
+                            return inner;
+                        case "encryptionKeySource":
+                            return keySource;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return id;
+                        default:
+                            throw new UnsupportedOperationException(method.getName() + " is not stubbed");
+                    }
+                });
+    }
+
+    private static StorageAccountInner inner(String json) {
+        try {
+            return JacksonAdapter.createDefaultSerializerAdapter()
+                    .deserialize(json, StorageAccountInner.class, SerializerEncoding.JSON);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,14 +1,12 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
 import com.azure.core.management.Region;
-import com.microsoft.aad.adal4j.AuthenticationContext;
 import com.microsoft.aad.adal4j.AuthenticationResult;
 import com.microsoft.aad.adal4j.DeviceCode;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 public class AccessTokenUtils {
@@ -23,22 +21,30 @@ public class AccessTokenUtils {
     public final static String CLIENT_ID = "04b07795-8ddb-461a-bbee-02f9e1bf7b46";
 
     //    private static String userOid;
-    private static String userOid;
+    private static volatile String userOid;
+
+    // Serializes the interactive device code prompts so concurrent callers don't both read from stdin.
+    private static final Object DEVICE_CODE_LOCK = new Object();
 
     // Private helper method that gets the access token for the authorization and
     // resource depending on which variables are supplied in the environment.
     public static String getAccessToken(String authorization, String resource, String clientID)
             throws InterruptedException, ExecutionException, MalformedURLException, TimeoutException {
+        return acquireToken(authorization, resource, clientID).getAccessToken();
+    }
+
+    // Runs the device code flow and returns the full authentication result, including the
+    // refresh token and the real expiry of the access token.
+    public static AuthenticationResult acquireToken(String authorization, String resource, String clientID)
+            throws InterruptedException, ExecutionException, MalformedURLException, TimeoutException {
 
-        // Starts a service to fetch access token.
-        ExecutorService service = null;
-        service = Executors.newFixedThreadPool(3);
-        try {
-            final AuthenticationContext context = new AuthenticationContext(authorization, false, service);
+        // The shared engine keeps its executor and authentication context alive between acquisitions.
+        TokenAcquisitionEngine engine = TokenAcquisitionEngine.shared();
+        AuthenticationResult authResult;
+        synchronized (DEVICE_CODE_LOCK) {
             // The key vault storage methods must be called by an authenticated user (not a service principal)
             // so all authentication is through this device code authentication flow.
-            Future<DeviceCode> deviceFuture = context.acquireDeviceCode(clientID, resource, null);
-            DeviceCode code = deviceFuture.get();
+            DeviceCode code = engine.acquireDeviceCode(authorization, resource, clientID);
             System.out.println("###############################################################");
             System.out.println("To continue with the test run, please do the following:");
             System.out.println(code.getMessage());
@@ -52,17 +58,36 @@ public class AccessTokenUtils {
                 e.printStackTrace();
             }
 
-            Future<AuthenticationResult> future = context.acquireTokenByDeviceCode(code, null);
-            AuthenticationResult authResult = future.get();
+            authResult = engine.acquireTokenByDeviceCode(authorization, code);
+        }
+        userOid = authResult.getUserInfo().getUniqueId();
+        return authResult;
+    }
+
+    // Redeems a refresh token from an earlier result for a new access token without prompting the user.
+    public static AuthenticationResult acquireTokenByRefreshToken(String authorization, String refreshToken,
+                                                                  String resource, String clientID)
+            throws InterruptedException, ExecutionException, MalformedURLException {
+        AuthenticationResult authResult = TokenAcquisitionEngine.shared()
+                .acquireTokenByRefreshToken(authorization, refreshToken, resource, clientID);
+        if (authResult.getUserInfo() != null) {
             userOid = authResult.getUserInfo().getUniqueId();
-            return authResult.getAccessToken();
-        } finally {
-            service.shutdown();
         }
+        return authResult;
+    }
+
+    // Releases the shared token acquisition engine. No new tokens can be acquired afterwards.
+    public static void shutdown() {
+        TokenAcquisitionEngine.shared().close();
     }
 
     public static String getUserOid() {
         return userOid;
     }
 
+    // Used when running against the mock, where no token, and so no user, is ever acquired.
+    static void setUserOid(String oid) {
+        userOid = oid;
+    }
+
 }
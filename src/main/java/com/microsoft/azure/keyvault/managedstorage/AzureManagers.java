@@ -0,0 +1,116 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.policy.HttpLogDetailLevel;
+import com.azure.core.http.policy.HttpLogOptions;
+import com.azure.core.management.AzureEnvironment;
+import com.azure.core.management.profile.AzureProfile;
+import com.azure.resourcemanager.authorization.AuthorizationManager;
+import com.azure.resourcemanager.keyvault.KeyVaultManager;
+import com.azure.resourcemanager.resources.fluentcore.arm.AzureConfigurable;
+import com.azure.resourcemanager.resources.fluentcore.utils.ResourceManagerUtils;
+import com.azure.resourcemanager.storage.StorageManager;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The storage, key vault and authorization managers the samples use, each created when it is first asked for and
+ * then shared.
+ *
+ * AzureResourceManager creates a manager for every Azure service up front, which takes seconds and loads thousands of
+ * classes, while the samples only need these three. Nothing is created until a manager is first needed, so a command
+ * that only signs SAS tokens or talks to the blob endpoint creates none of them. The managers share one credential,
+ * so the user signs in once per process, and one HTTP client. How long each took to create is recorded in
+ * SampleMetrics.
+ */
+public class AzureManagers {
+
+    private final Supplier<TokenCredential> credentialFactory;
+    private final HttpClient httpClient;
+    private final AzureProfile profile;
+    private final ResourceManagerUtils.InternalRuntimeContext internalContext = new ResourceManagerUtils.InternalRuntimeContext();
+    private volatile TokenCredential credential;
+    private volatile StorageManager storageManager;
+    private volatile KeyVaultManager keyVaultManager;
+    private volatile AuthorizationManager authorizationManager;
+
+    /**
+     * @param credentialFactory creates the credential when the first manager is created
+     * @param httpClient the client every manager sends its requests with
+     */
+    public AzureManagers(Supplier<TokenCredential> credentialFactory, HttpClient httpClient) {
+        this.credentialFactory = credentialFactory;
+        this.httpClient = httpClient;
+        this.profile = new AzureProfile(AccessTokenUtils.AZURE_TENANT_ID, AccessTokenUtils.AZURE_SUBSCRIPTION_ID,
+                AzureEnvironment.AZURE);
+    }
+
+    public StorageManager storage() {
+        StorageManager manager = storageManager;
+        if (manager == null) {
+            synchronized (this) {
+                if (storageManager == null) {
+                    storageManager = create("startup.storageManager", StorageManager.configure(),
+                            configurable -> configurable.authenticate(credential(), profile));
+                }
+                manager = storageManager;
+            }
+        }
+        return manager;
+    }
+
+    public KeyVaultManager keyVault() {
+        KeyVaultManager manager = keyVaultManager;
+        if (manager == null) {
+            synchronized (this) {
+                if (keyVaultManager == null) {
+                    keyVaultManager = create("startup.keyVaultManager", KeyVaultManager.configure(),
+                            configurable -> configurable.authenticate(credential(), profile));
+                }
+                manager = keyVaultManager;
+            }
+        }
+        return manager;
+    }
+
+    public AuthorizationManager authorization() {
+        AuthorizationManager manager = authorizationManager;
+        if (manager == null) {
+            synchronized (this) {
+                if (authorizationManager == null) {
+                    authorizationManager = create("startup.authorizationManager", AuthorizationManager.configure(),
+                            configurable -> configurable.authenticate(credential(), profile));
+                }
+                manager = authorizationManager;
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Returns a random name with the prefix, without creating any manager.
+     */
+    public String randomResourceName(String prefix, int maxLength) {
+        return internalContext.randomResourceName(prefix, maxLength);
+    }
+
+    // Called with the lock held.
+    private TokenCredential credential() {
+        if (credential == null) {
+            credential = credentialFactory.get();
+        }
+        return credential;
+    }
+
+    private <C extends AzureConfigurable<C>, M> M create(String metricName, C configurable, Function<C, M> authenticate) {
+        long start = System.nanoTime();
+        M manager = authenticate.apply(configurable
+                .withHttpClient(httpClient)
+                .withLogOptions(new HttpLogOptions().setLogLevel(HttpLogDetailLevel.BASIC))
+                .withPolicy(new HttpMetricsPolicy(SampleMetrics.shared())));
+        SampleMetrics.shared().record(metricName, System.nanoTime() - start);
+        return manager;
+    }
+}
@@ -0,0 +1,184 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.credential.AzureSasCredential;
+import com.azure.core.http.HttpClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.common.StorageSharedKeyCredential;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares blob service clients, and one HttpClient with its connection pool between all of them.
+ *
+ * Clients are kept per endpoint and credential type. SAS clients are also kept per resource the token covers and
+ * per what it grants, i.e. every token parameter except the signature and the validity period, so an account SAS
+ * and a container SAS on the same endpoint, or a read-only and a writing token for one container, don't replace
+ * each other. A SAS client is built once with an AzureSasCredential, and a newer token granting the same only
+ * replaces the credential's signature, so the pipeline is reused. A shared key client is rebuilt only when it is
+ * asked for with a different credential, e.g. after a key regeneration. Clients that haven't been used for the idle
+ * timeout are dropped on a later access.
+ */
+public class BlobClientRegistry {
+
+    private static final String SHARED_KEY = "sharedKey";
+    private static final String SAS = "sas";
+
+    private final HttpClient httpClient;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<ClientKey, Entry> clients = new ConcurrentHashMap<>();
+    private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+    public BlobClientRegistry(HttpClient httpClient, Duration idleTimeout) {
+        this.httpClient = httpClient;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Returns the client for the endpoint authorized by the SAS token.
+     *
+     * @param resource identifies what the token grants access to, as passed to SasTokenCache.getOrIssue
+     */
+    public BlobServiceClient sasClient(String endpoint, String resource, String sasToken) {
+        return sasEntry(endpoint, resource, sasToken).client;
+    }
+
+    /**
+     * Returns the asynchronous client for the endpoint authorized by the SAS token. It shares its pipeline with the
+     * client returned by sasClient for the same endpoint, resource and grant.
+     */
+    public BlobServiceAsyncClient sasAsyncClient(String endpoint, String resource, String sasToken) {
+        return sasEntry(endpoint, resource, sasToken).asyncClient;
+    }
+
+    /**
+     * Returns the client for the endpoint authorized by the shared key.
+     */
+    public BlobServiceClient sharedKeyClient(String endpoint, StorageSharedKeyCredential credential) {
+        evictIdle();
+        Entry entry = clients.compute(new ClientKey(endpoint, SHARED_KEY, ""), (key, existing) ->
+                existing != null && existing.credential == credential
+                        ? existing
+                        : new Entry(newBuilder(endpoint).credential(credential), credential));
+        entry.touch();
+        return entry.client;
+    }
+
+    /**
+     * Returns the number of clients currently kept.
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    private Entry sasEntry(String endpoint, String resource, String sasToken) {
+        evictIdle();
+        ClientKey key = new ClientKey(endpoint, SAS, resource + "?" + grantOf(sasToken));
+        Entry entry = clients.get(key);
+        if (entry == null) {
+            entry = clients.computeIfAbsent(key, ignored -> {
+                AzureSasCredential credential = new AzureSasCredential(sasToken);
+                return new Entry(newBuilder(endpoint).credential(credential), credential);
+            });
+        }
+        AzureSasCredential credential = (AzureSasCredential) entry.credential;
+        if (!sasToken.equals(credential.getSignature())) {
+            // The SAS policy reads the signature on every request, so the next request uses the new token.
+            credential.update(sasToken);
+        }
+        entry.touch();
+        return entry;
+    }
+
+    // The parameters of the token without the signature, start and expiry, which change every time a token for the
+    // same grant is issued. Sorted, so the order the token was written in doesn't matter.
+    private static String grantOf(String sasToken) {
+        String[] parameters = (sasToken.startsWith("?") ? sasToken.substring(1) : sasToken).split("&");
+        Arrays.sort(parameters);
+        StringBuilder grant = new StringBuilder(sasToken.length());
+        for (String parameter : parameters) {
+            if (parameter.startsWith("sig=") || parameter.startsWith("st=") || parameter.startsWith("se=")) {
+                continue;
+            }
+            if (grant.length() > 0) {
+                grant.append('&');
+            }
+            grant.append(parameter);
+        }
+        return grant.toString();
+    }
+
+    private BlobServiceClientBuilder newBuilder(String endpoint) {
+        return new BlobServiceClientBuilder()
+                .endpoint(endpoint)
+                .httpClient(httpClient)
+                .addPolicy(new HttpMetricsPolicy(SampleMetrics.shared()));
+    }
+
+    // Sweeps at most twice per idle timeout, on whichever thread gets here first.
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastEviction.get();
+        if (now - last < idleTimeoutNanos / 2 || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        clients.values().removeIf(entry -> now - entry.lastUsed > idleTimeoutNanos);
+    }
+
+    private static final class Entry {
+        private final BlobServiceAsyncClient asyncClient;
+        private final BlobServiceClient client;
+        private final Object credential;
+        private volatile long lastUsed = System.nanoTime();
+
+        Entry(BlobServiceClientBuilder builder, Object credential) {
+            this.asyncClient = builder.buildAsyncClient();
+            // The synchronous client wraps the same pipeline instead of building a second one.
+            this.client = new BlobServiceClientBuilder()
+                    .endpoint(asyncClient.getAccountUrl())
+                    .pipeline(asyncClient.getHttpPipeline())
+                    .buildClient();
+            this.credential = credential;
+        }
+
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+    }
+
+    private static final class ClientKey {
+        private final String endpoint;
+        private final String credentialType;
+        private final String resource;
+
+        ClientKey(String endpoint, String credentialType, String resource) {
+            this.endpoint = endpoint;
+            this.credentialType = credentialType;
+            this.resource = resource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) o;
+            return endpoint.equals(other.endpoint)
+                    && credentialType.equals(other.credentialType)
+                    && resource.equals(other.resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, credentialType, resource);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Deletes the managed storage accounts of a resource group together with their role assignments and vaults, e.g. to
+ * clean up a test environment.
+ *
+ * The resource group is listed once, and the accounts are matched by name prefix and by the vault holding their
+ * encryption key. Teardown then runs in phases, each deleting in parallel with bounded concurrency: the role
+ * assignments on each account followed by the account, then the vaults that no remaining account of the resource
+ * group uses. Soft delete keeps deleted vaults around, so purging them is a last, optional phase, which vaults with
+ * purge protection refuse until their retention period ends. Throttled deletes wait for the Retry-After period and
+ * are tried again, and a delete that still fails is reported without stopping the others.
+ */
+public class BulkTeardown {
+
+    private static final LongAdder THROTTLED = SampleMetrics.shared().counter("teardown.throttled");
+
+    private final AzureManagers azureManagers;
+    private final String resourceGroup;
+    private final SampleMetrics metrics = SampleMetrics.shared();
+    private String namePrefix = "";
+    private String vaultUri;
+    private VaultPlacement placement;
+    private boolean purge;
+    private int concurrency = 16;
+    private int maxThrottledRetries = 5;
+
+    public BulkTeardown(AzureManagers azureManagers, String resourceGroup) {
+        this.azureManagers = azureManagers;
+        this.resourceGroup = resourceGroup;
+    }
+
+    /**
+     * Only tears down accounts whose name starts with the prefix.
+     */
+    public BulkTeardown withNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+        return this;
+    }
+
+    /**
+     * Only tears down accounts whose encryption key is in the vault.
+     */
+    public BulkTeardown withVaultUri(String vaultUri) {
+        this.vaultUri = StorageAccountInventory.normalize(vaultUri);
+        return this;
+    }
+
+    /**
+     * Releases the deleted accounts and vaults from the placement, so that its vaults take new accounts in their
+     * place.
+     */
+    public BulkTeardown withPlacement(VaultPlacement placement) {
+        this.placement = placement;
+        return this;
+    }
+
+    /**
+     * Sets whether deleted vaults are purged at the end.
+     */
+    public BulkTeardown withPurge(boolean purge) {
+        this.purge = purge;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of deletes in flight.
+     */
+    public BulkTeardown withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets how often a throttled delete is tried again before it is reported as failed.
+     */
+    public BulkTeardown withMaxThrottledRetries(int maxThrottledRetries) {
+        this.maxThrottledRetries = maxThrottledRetries;
+        return this;
+    }
+
+    /**
+     * Runs every phase and emits what was deleted once the last one completes.
+     */
+    public Mono<TeardownResult> run() {
+        TeardownResult result = new TeardownResult();
+        return azureManagers.storage().storageAccounts().listByResourceGroupAsync(resourceGroup)
+                .collectList()
+                .flatMap(storageAccounts -> {
+                    List<StorageAccount> matched = new ArrayList<>();
+                    for (StorageAccount storageAccount : storageAccounts) {
+                        if (matches(storageAccount)) {
+                            matched.add(storageAccount);
+                        }
+                    }
+                    System.out.printf("Tearing down %d of the %d storage accounts in resource group %s%n",
+                            matched.size(), storageAccounts.size(), resourceGroup);
+                    Set<String> deleted = ConcurrentHashMap.newKeySet();
+                    return phase("storage accounts", matched, StorageAccount::name,
+                            storageAccount -> deleteRoleAssignments(storageAccount, result)
+                                    .then(delete("Deleting storage account " + storageAccount.name(), () -> azureManagers
+                                            .storage().storageAccounts().deleteByIdAsync(storageAccount.id())))
+                                    .doOnSuccess(ignored -> {
+                                        deleted.add(storageAccount.id());
+                                        result.storageAccounts.incrementAndGet();
+                                        if (placement != null) {
+                                            placement.release(storageAccount.name());
+                                        }
+                                    }), result)
+                            .then(Mono.defer(() -> phase("vaults", unusedVaultNames(storageAccounts, deleted),
+                                    Function.identity(), vaultName -> deleteVault(vaultName, result), result)))
+                            .then(Mono.defer(() -> purge
+                                    ? phase("vault purges", new ArrayList<>(result.deletedVaultLocations.keySet()),
+                                            Function.identity(), vaultName -> purgeVault(vaultName, result), result)
+                                    : Mono.empty()));
+                })
+                .thenReturn(result)
+                .transform(metrics.timed("teardown.run"));
+    }
+
+    private boolean matches(StorageAccount storageAccount) {
+        return storageAccount.name().startsWith(namePrefix)
+                && (vaultUri == null || vaultUri.equals(StorageAccountInventory.vaultUriOf(storageAccount)));
+    }
+
+    // The vaults of the deleted accounts, except those that an account which was kept, or could not be deleted,
+    // still uses.
+    private static List<String> unusedVaultNames(List<StorageAccount> storageAccounts, Set<String> deleted) {
+        Set<String> candidates = new LinkedHashSet<>();
+        Set<String> inUse = new HashSet<>();
+        for (StorageAccount storageAccount : storageAccounts) {
+            String uri = StorageAccountInventory.vaultUriOf(storageAccount);
+            if (uri != null) {
+                (deleted.contains(storageAccount.id()) ? candidates : inUse).add(uri);
+            }
+        }
+        List<String> vaultNames = new ArrayList<>();
+        for (String uri : candidates) {
+            if (!inUse.contains(uri)) {
+                vaultNames.add(StorageAccountInventory.vaultNameOf(uri));
+            }
+        }
+        return vaultNames;
+    }
+
+    // Role assignments are not removed with the account they are scoped to, so they are deleted first. Inherited
+    // assignments, whose scope is above the account, are left alone.
+    private Mono<Void> deleteRoleAssignments(StorageAccount storageAccount, TeardownResult result) {
+        return withBackoff("Listing the role assignments of " + storageAccount.name(), () -> azureManagers
+                .authorization().roleAssignments().listByScopeAsync(storageAccount.id()).collectList(), 0)
+                .flatMapIterable(roleAssignments -> roleAssignments)
+                .filter(roleAssignment -> storageAccount.id().equalsIgnoreCase(roleAssignment.scope()))
+                .flatMap(roleAssignment -> delete("Deleting role assignment " + roleAssignment.name(), () -> azureManagers
+                        .authorization().roleAssignments().deleteByIdAsync(roleAssignment.id()))
+                        .doOnSuccess(ignored -> result.roleAssignments.incrementAndGet()))
+                .then();
+    }
+
+    // The vault is fetched first for its location, which purging needs. A vault outside the resource group is skipped.
+    private Mono<Void> deleteVault(String vaultName, TeardownResult result) {
+        return withBackoff("Getting vault " + vaultName, () -> azureManagers.keyVault().vaults()
+                .getByResourceGroupAsync(resourceGroup, vaultName), 0)
+                .onErrorResume(BulkTeardown::isNotFound, error -> Mono.empty())
+                .flatMap((Vault vault) -> delete("Deleting vault " + vaultName, () -> azureManagers.keyVault().vaults()
+                        .deleteByIdAsync(vault.id()))
+                        .doOnSuccess(ignored -> {
+                            result.deletedVaultLocations.put(vaultName, vault.regionName());
+                            result.vaults.incrementAndGet();
+                            if (placement != null) {
+                                placement.removeVault(vaultName);
+                            }
+                        }));
+    }
+
+    private Mono<Void> purgeVault(String vaultName, TeardownResult result) {
+        return delete("Purging vault " + vaultName, () -> azureManagers.keyVault().vaults()
+                .purgeDeletedAsync(vaultName, result.deletedVaultLocations.get(vaultName)))
+                .doOnSuccess(ignored -> result.purgedVaults.incrementAndGet())
+                .onErrorResume(BulkTeardown::isConflict, error -> {
+                    System.out.printf("Vault %s has purge protection and is purged when its retention period ends%n",
+                            vaultName);
+                    result.purgeProtectedVaults.incrementAndGet();
+                    return Mono.empty();
+                });
+    }
+
+    // Deletes every item with bounded concurrency, printing progress at every tenth of the phase. Failed deletes are
+    // counted and reported, and don't stop the phase.
+    private <T> Mono<Void> phase(String what, List<T> items, Function<T, String> nameOf,
+                                 Function<T, Mono<Void>> delete, TeardownResult result) {
+        if (items.isEmpty()) {
+            return Mono.empty();
+        }
+        AtomicInteger done = new AtomicInteger();
+        int step = Math.max(1, items.size() / 10);
+        return Flux.fromIterable(items)
+                .flatMap(item -> delete.apply(item)
+                        .onErrorResume(error -> {
+                            System.out.printf("Could not tear down %s: %s%n", nameOf.apply(item), error.getMessage());
+                            result.failures.incrementAndGet();
+                            return Mono.empty();
+                        })
+                        .doOnTerminate(() -> {
+                            int count = done.incrementAndGet();
+                            if (count % step == 0 || count == items.size()) {
+                                System.out.printf("Teardown of %s: %d of %d done%n", what, count, items.size());
+                            }
+                        }), concurrency)
+                .then()
+                .transform(metrics.timed("teardown." + what.replace(' ', '.')));
+    }
+
+    // Something that is already gone counts as deleted.
+    private Mono<Void> delete(String action, Supplier<Mono<Void>> delete) {
+        return withBackoff(action, delete, 0)
+                .onErrorResume(BulkTeardown::isNotFound, error -> Mono.empty());
+    }
+
+    // The HTTP pipeline already retries a few times on its own; this waits out longer throttling of the subscription.
+    private <T> Mono<T> withBackoff(String action, Supplier<Mono<T>> call, int attempt) {
+        return Mono.defer(call)
+                .onErrorResume(error -> {
+                    Duration retryAfter = HttpErrors.throttledRetryAfter(error);
+                    if (retryAfter == null || attempt >= maxThrottledRetries) {
+                        return Mono.error(error);
+                    }
+                    System.out.printf("%s was throttled, retrying in %ds%n", action, retryAfter.getSeconds());
+                    THROTTLED.increment();
+                    return Mono.delay(retryAfter).then(withBackoff(action, call, attempt + 1));
+                });
+    }
+
+    private static boolean isNotFound(Throwable error) {
+        return HttpErrors.statusCodeOf(error) == 404;
+    }
+
+    private static boolean isConflict(Throwable error) {
+        return HttpErrors.statusCodeOf(error) == 409;
+    }
+
+    /**
+     * What a teardown deleted.
+     */
+    public static class TeardownResult {
+        private final AtomicInteger storageAccounts = new AtomicInteger();
+        private final AtomicInteger roleAssignments = new AtomicInteger();
+        private final AtomicInteger vaults = new AtomicInteger();
+        private final AtomicInteger purgedVaults = new AtomicInteger();
+        private final AtomicInteger purgeProtectedVaults = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        // Names and locations of the vaults deleted, which purging needs.
+        private final ConcurrentHashMap<String, String> deletedVaultLocations = new ConcurrentHashMap<>();
+
+        TeardownResult() {
+        }
+
+        public int storageAccounts() {
+            return storageAccounts.get();
+        }
+
+        public int roleAssignments() {
+            return roleAssignments.get();
+        }
+
+        public int vaults() {
+            return vaults.get();
+        }
+
+        public int purgedVaults() {
+            return purgedVaults.get();
+        }
+
+        /**
+         * Returns the number of deleted vaults that couldn't be purged yet because of purge protection.
+         */
+        public int purgeProtectedVaults() {
+            return purgeProtectedVaults.get();
+        }
+
+        /**
+         * Returns the number of resources that could not be deleted or purged.
+         */
+        public int failures() {
+            return failures.get();
+        }
+
+        public Set<String> deletedVaultNames() {
+            return Collections.unmodifiableSet(deletedVaultLocations.keySet());
+        }
+    }
+}
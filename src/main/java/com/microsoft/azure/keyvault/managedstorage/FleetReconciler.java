@@ -0,0 +1,258 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Brings a fleet of managed storage accounts to their desired state, resuming from the state recorded by earlier
+ * runs.
+ *
+ * The desired names of every account and the id of each resource created for it are kept in a ReconciliationLog,
+ * recorded as soon as each provisioning step completes. A run diffs the desired specs against that state and
+ * applies only the steps that haven't completed, so accounts that are already in sync cost no requests and a re-run
+ * takes time proportional to the drift. Before diffing, the storage accounts of the resource group are listed once,
+ * and accounts that were deleted outside the reconciler are provisioned again.
+ */
+public class FleetReconciler {
+
+    // Desired state, recorded when a spec is declared.
+    private static final String VAULT_NAME = "vaultName";
+    private static final String KEY_NAME = "keyName";
+    private static final String KEY_VAULT_SERVICE_PRINCIPAL_ID = "keyVaultServicePrincipalId";
+    private static final String BLOB_PUBLIC_ACCESS = "blobPublicAccess";
+    private static final String SHARED_KEY_ACCESS = "sharedKeyAccess";
+    // Observed state, recorded as each step completes. Only the first four depend on the storage account; the vault
+    // and its key outlive it.
+    private static final String STORAGE_ACCOUNT_ID = "storageAccountId";
+    private static final String ROLE_ASSIGNMENT_NAME = "roleAssignmentName";
+    private static final String ROLE_ASSIGNED = "roleAssigned";
+    private static final String VAULT_URI = "vaultUri";
+    private static final String KEY_ID = "keyId";
+    private static final String ENCRYPTION_KEY = "encryptionKey";
+    private static final String[] ACCOUNT_FIELDS = {STORAGE_ACCOUNT_ID, ROLE_ASSIGNMENT_NAME, ROLE_ASSIGNED, ENCRYPTION_KEY};
+
+    private final AzureManagers azureManagers;
+    private final StorageAccountProvisioner provisioner;
+    private final ReconciliationLog reconciliationLog;
+    private final SampleMetrics metrics = SampleMetrics.shared();
+    private int concurrency = 16;
+    private boolean observedCheck = true;
+
+    public FleetReconciler(AzureManagers azureManagers, StorageAccountProvisioner provisioner,
+                           ReconciliationLog reconciliationLog) {
+        this.azureManagers = azureManagers;
+        this.provisioner = provisioner;
+        this.reconciliationLog = reconciliationLog;
+    }
+
+    /**
+     * Sets the maximum number of accounts reconciled at the same time.
+     */
+    public FleetReconciler withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets whether the storage accounts of the resource group are listed before each run to find accounts deleted
+     * outside the reconciler. Without the check a run sends no request at all for accounts recorded as in sync.
+     */
+    public FleetReconciler withObservedCheck(boolean observedCheck) {
+        this.observedCheck = observedCheck;
+        return this;
+    }
+
+    /**
+     * Records the spec as desired, so desiredSpecs() returns it after a restart. The names of an account are fixed
+     * once declared. Accounts are reconciled into vaults of their own, so the spec must name its vault.
+     */
+    public void declare(StorageAccountProvisioner.AccountSpec spec) throws IOException {
+        String account = spec.storageAccountName();
+        spec.checkComplete();
+        if (spec.vaultName() == null) {
+            throw new IllegalArgumentException("The spec of storage account " + account
+                    + " names no vault; accounts placed in shared vaults can't be reconciled");
+        }
+        reconciliationLog.record(account, VAULT_NAME, spec.vaultName());
+        reconciliationLog.record(account, KEY_NAME, spec.keyName());
+        reconciliationLog.record(account, KEY_VAULT_SERVICE_PRINCIPAL_ID, spec.keyVaultServicePrincipalId());
+        reconciliationLog.record(account, BLOB_PUBLIC_ACCESS, String.valueOf(spec.isBlobPublicAccessEnabled()));
+        reconciliationLog.record(account, SHARED_KEY_ACCESS, String.valueOf(spec.isSharedKeyAccessEnabled()));
+    }
+
+    /**
+     * Returns the specs declared so far, including those of earlier runs.
+     */
+    public List<StorageAccountProvisioner.AccountSpec> desiredSpecs() {
+        List<StorageAccountProvisioner.AccountSpec> specs = new ArrayList<>();
+        for (String account : reconciliationLog.accounts()) {
+            Map<String, String> recorded = reconciliationLog.stateOf(account);
+            if (recorded.containsKey(VAULT_NAME)) {
+                specs.add(specOf(account, recorded));
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Declares the specs and applies the steps each of them is missing. Emits the names of the accounts that had
+     * drifted, as each is brought in sync.
+     */
+    public Flux<String> reconcile(List<StorageAccountProvisioner.AccountSpec> specs) {
+        return forgetDeletedAccounts(specs)
+                .thenMany(Flux.defer(() -> {
+                    List<StorageAccountProvisioner.AccountSpec> drifted = new ArrayList<>();
+                    for (StorageAccountProvisioner.AccountSpec spec : specs) {
+                        if (!isInSync(reconciliationLog.stateOf(spec.storageAccountName()))) {
+                            drifted.add(spec);
+                        }
+                    }
+                    System.out.printf("%d of %d accounts are in sync, reconciling %d%n",
+                            specs.size() - drifted.size(), specs.size(), drifted.size());
+                    return Flux.fromIterable(drifted);
+                }))
+                .flatMap(spec -> record(() -> declare(spec))
+                        .then(Mono.defer(() -> reconcileAccount(spec)))
+                        .thenReturn(spec.storageAccountName()), concurrency);
+    }
+
+    // Lists the resource group once and forgets what was recorded about accounts that no longer exist. Their vault
+    // and key are kept, and reused when the account is created again.
+    private Mono<Void> forgetDeletedAccounts(List<StorageAccountProvisioner.AccountSpec> specs) {
+        if (!observedCheck) {
+            return Mono.empty();
+        }
+        return azureManagers.storage().storageAccounts().listByResourceGroupAsync(AccessTokenUtils.RESOURCE_GROUP)
+                .map(StorageAccount::name)
+                .collect(Collectors.toSet())
+                .flatMap(existing -> record(() -> {
+                    for (StorageAccountProvisioner.AccountSpec spec : specs) {
+                        String account = spec.storageAccountName();
+                        if (reconciliationLog.stateOf(account).containsKey(STORAGE_ACCOUNT_ID) && !existing.contains(account)) {
+                            System.out.println("Storage account " + account + " was deleted, provisioning it again");
+                            for (String field : ACCOUNT_FIELDS) {
+                                reconciliationLog.forget(account, field);
+                            }
+                        }
+                    }
+                }));
+    }
+
+    // Mirrors StorageAccountProvisioner.provision, but skips the steps already recorded and fetches a resource
+    // created by an earlier run only if a later step needs it.
+    private Mono<Void> reconcileAccount(StorageAccountProvisioner.AccountSpec spec) {
+        String account = spec.storageAccountName();
+        Map<String, String> recorded = reconciliationLog.stateOf(account);
+
+        Mono<StorageAccount> storageAccount = (recorded.containsKey(STORAGE_ACCOUNT_ID)
+                ? azureManagers.storage().storageAccounts().getByResourceGroupAsync(AccessTokenUtils.RESOURCE_GROUP, account)
+                        .doOnNext(provisioner::observed)
+                : provisioner.createStorageAccount(spec)
+                        .flatMap(created -> record(account, STORAGE_ACCOUNT_ID, created.id()).thenReturn(created)))
+                .cache();
+        Mono<String> storageAccountId = recorded.containsKey(STORAGE_ACCOUNT_ID)
+                ? Mono.just(recorded.get(STORAGE_ACCOUNT_ID))
+                : storageAccount.map(StorageAccount::id);
+
+        Mono<Void> roleAssignment = recorded.containsKey(ROLE_ASSIGNED)
+                ? Mono.empty()
+                : Mono.defer(() -> {
+                    // The name is recorded before the assignment is made, so a resumed run retries the same one.
+                    String roleAssignmentName = recorded.containsKey(ROLE_ASSIGNMENT_NAME)
+                            ? recorded.get(ROLE_ASSIGNMENT_NAME)
+                            : UUID.randomUUID().toString();
+                    return record(account, ROLE_ASSIGNMENT_NAME, roleAssignmentName)
+                            .then(storageAccountId)
+                            .flatMap(id -> provisioner.assignKeyOperatorRole(spec, id, roleAssignmentName))
+                            .then(record(account, ROLE_ASSIGNED, roleAssignmentName));
+                });
+
+        // A vault recorded without its account outlived an account that was deleted, and the new account's identity
+        // has to be let in. Deferred, so that the Key Vault manager is only created for a step that needs the vault.
+        Mono<Vault> existingVault = Mono.defer(() -> azureManagers.keyVault().vaults()
+                .getByResourceGroupAsync(AccessTokenUtils.RESOURCE_GROUP, spec.vaultName()));
+        Mono<Vault> vault = (recorded.containsKey(VAULT_URI)
+                ? recorded.containsKey(STORAGE_ACCOUNT_ID)
+                        ? existingVault
+                        : Mono.zip(existingVault, storageAccount).flatMap(tuple -> provisioner.grantVaultAccess(
+                                tuple.getT1(), tuple.getT2().innerModel().identity().principalId()))
+                : storageAccount
+                        .flatMap(created -> provisioner.createVault(spec, created.innerModel().identity().principalId()))
+                        .flatMap(created -> record(account, VAULT_URI, created.vaultUri()).thenReturn(created)))
+                .cache();
+        Mono<String> vaultUri = recorded.containsKey(VAULT_URI) && recorded.containsKey(STORAGE_ACCOUNT_ID)
+                ? Mono.just(recorded.get(VAULT_URI))
+                : vault.map(Vault::vaultUri);
+
+        // The key may come from a pool, so its name is taken from the key rather than from the spec.
+        Mono<String> keyName = (recorded.containsKey(KEY_ID)
+                ? vaultUri.thenReturn(keyNameOf(recorded.get(KEY_ID)))
+                : vault.flatMap(created -> provisioner.createKey(spec, created))
+                        .flatMap(created -> record(account, KEY_ID, created.id()).thenReturn(created.name())))
+                .cache();
+
+        Mono<Void> encryption = recorded.containsKey(ENCRYPTION_KEY)
+                ? Mono.empty()
+                : Mono.zip(storageAccount, vaultUri, keyName)
+                        .flatMap(tuple -> provisioner.enableEncryption(spec, tuple.getT1(), tuple.getT2(), tuple.getT3())
+                                .then(record(account, ENCRYPTION_KEY, tuple.getT3())));
+
+        return Mono.when(roleAssignment, keyName)
+                .then(encryption)
+                .transform(metrics.timed("reconcile.account"));
+    }
+
+    private static boolean isInSync(Map<String, String> recorded) {
+        return recorded.containsKey(STORAGE_ACCOUNT_ID)
+                && recorded.containsKey(ROLE_ASSIGNED)
+                && recorded.containsKey(VAULT_URI)
+                && recorded.containsKey(KEY_ID)
+                && recorded.containsKey(ENCRYPTION_KEY);
+    }
+
+    // Key ids have the form https://{vault}/keys/{name}/{version}.
+    private static String keyNameOf(String keyId) {
+        String[] segments = keyId.split("/");
+        return segments[segments.length - 2];
+    }
+
+    private static StorageAccountProvisioner.AccountSpec specOf(String account, Map<String, String> recorded) {
+        StorageAccountProvisioner.AccountSpec spec =
+                new StorageAccountProvisioner.AccountSpec(account, recorded.get(VAULT_NAME))
+                        .withKeyName(recorded.get(KEY_NAME))
+                        .withKeyVaultServicePrincipalId(recorded.get(KEY_VAULT_SERVICE_PRINCIPAL_ID));
+        if (Boolean.parseBoolean(recorded.get(BLOB_PUBLIC_ACCESS))) {
+            spec.withBlobPublicAccess();
+        }
+        if (Boolean.parseBoolean(recorded.get(SHARED_KEY_ACCESS))) {
+            spec.withSharedKeyAccess();
+        }
+        return spec;
+    }
+
+    private Mono<Void> record(String account, String field, String value) {
+        return record(() -> reconciliationLog.record(account, field, value));
+    }
+
+    // Records are small appends to a local file, so they are written on the thread that completed the step.
+    private static Mono<Void> record(IoAction action) {
+        return Mono.fromCallable((Callable<Void>) () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
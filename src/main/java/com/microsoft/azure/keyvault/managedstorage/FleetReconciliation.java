@@ -0,0 +1,70 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Provisions a fleet of managed storage accounts that survives restarts.
+ *
+ * The names of the accounts and the progress of every provisioning step are kept in a local state directory. If a
+ * run dies halfway, running it again with the same directory finishes the accounts it left behind instead of
+ * creating new ones, and a run over a fleet that is already in sync only lists the resource group.
+ *
+ * Arguments: the fleet size (default 10) and the state directory (default "reconciliation-state").
+ */
+public class FleetReconciliation extends KeyVaultSampleBase {
+
+    private final ReconciliationLog reconciliationLog;
+    private final FleetReconciler reconciler;
+
+    public FleetReconciliation(Path stateDirectory) throws IOException {
+        super();
+        reconciliationLog = ReconciliationLog.open(stateDirectory);
+        reconciler = new FleetReconciler(azureManagers,
+                new StorageAccountProvisioner(azureManagers, roleDefinitionResolver)
+                        .withUpdater(storageAccountUpdater), reconciliationLog);
+    }
+
+    /**
+     * Declares accounts until the fleet has the given size, then applies whatever the fleet is missing.
+     */
+    public void reconcileFleet(int fleetSize) throws IOException {
+        List<StorageAccountProvisioner.AccountSpec> specs = reconciler.desiredSpecs();
+        while (specs.size() < fleetSize) {
+            StorageAccountProvisioner.AccountSpec spec = new StorageAccountProvisioner.AccountSpec(
+                    azureManagers.randomResourceName("storage", 15),
+                    azureManagers.randomResourceName("vault", 15));
+            // Recorded before anything is created, so a restart reuses the names.
+            reconciler.declare(spec);
+            specs.add(spec);
+        }
+
+        long start = System.nanoTime();
+        Long reconciled = reconciler.reconcile(specs)
+                .doOnNext(account -> System.out.println("Storage account " + account + " is in sync"))
+                .count()
+                .block();
+        System.out.printf("Reconciled %d of %d accounts in %d ms%n", reconciled, specs.size(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
+    public void close() throws IOException {
+        reconciliationLog.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Path stateDirectory = Paths.get(args.length > 1 ? args[1] : "reconciliation-state");
+        FleetReconciliation fleetReconciliation = new FleetReconciliation(stateDirectory);
+        try {
+            fleetReconciliation.reconcileFleet(fleetSize);
+            SampleMetrics.shared().print(System.out);
+        } finally {
+            fleetReconciliation.close();
+            AccessTokenUtils.shutdown();
+        }
+    }
+}
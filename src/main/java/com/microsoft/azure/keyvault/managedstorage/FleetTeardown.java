@@ -0,0 +1,54 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import java.time.Duration;
+
+/**
+ * Tears down the storage accounts the samples created, with their role assignments and vaults.
+ *
+ * Arguments: the name prefix of the accounts (default "storage", as the samples name them), the URI of the vault
+ * holding their keys ("*" for any, the default) and whether to purge the deleted vaults (default false).
+ */
+public class FleetTeardown extends KeyVaultSampleBase {
+
+    public FleetTeardown() {
+        super();
+    }
+
+    /**
+     * Deletes every matching account and the vaults only they used, and reports what was deleted.
+     */
+    public void tearDown(String namePrefix, String vaultUri, boolean purge) {
+        BulkTeardown teardown = new BulkTeardown(azureManagers, AccessTokenUtils.RESOURCE_GROUP)
+                .withNamePrefix(namePrefix)
+                .withPlacement(vaultPlacement)
+                .withPurge(purge);
+        if (vaultUri != null) {
+            teardown.withVaultUri(vaultUri);
+        }
+
+        long start = System.nanoTime();
+        BulkTeardown.TeardownResult result = teardown.run().block();
+        System.out.printf("Deleted %d storage accounts, %d role assignments and %d vaults in %d ms%n",
+                result.storageAccounts(), result.roleAssignments(), result.vaults(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+        if (purge) {
+            System.out.printf("Purged %d vaults, %d are purge protected%n",
+                    result.purgedVaults(), result.purgeProtectedVaults());
+        }
+        if (result.failures() > 0) {
+            System.out.printf("%d resources could not be deleted%n", result.failures());
+        }
+    }
+
+    public static void main(String[] args) {
+        String namePrefix = args.length > 0 ? args[0] : "storage";
+        String vaultUri = args.length > 1 && !"*".equals(args[1]) ? args[1] : null;
+        boolean purge = args.length > 2 && Boolean.parseBoolean(args[2]);
+        try {
+            new FleetTeardown().tearDown(namePrefix, vaultUri, purge);
+            SampleMetrics.shared().print(System.out);
+        } finally {
+            AccessTokenUtils.shutdown();
+        }
+    }
+}
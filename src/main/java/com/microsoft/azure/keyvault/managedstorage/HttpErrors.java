@@ -0,0 +1,65 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.exception.HttpResponseException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Classifies the errors of failed Azure requests, for the steps that retry or tolerate some of them.
+ */
+final class HttpErrors {
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(10);
+
+    private HttpErrors() {
+    }
+
+    /**
+     * Returns the status code of the response the error carries, or 0 if it carries none.
+     */
+    static int statusCodeOf(Throwable error) {
+        return error instanceof HttpResponseException && ((HttpResponseException) error).getResponse() != null
+                ? ((HttpResponseException) error).getResponse().getStatusCode()
+                : 0;
+    }
+
+    /**
+     * Returns whether the error is worth retrying: throttling, server errors and connection failures are; anything
+     * else is a real failure.
+     */
+    static boolean isTransient(Throwable error) {
+        int statusCode = statusCodeOf(error);
+        if (statusCode != 0) {
+            return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+        }
+        return error instanceof IOException || error.getCause() instanceof IOException;
+    }
+
+    /**
+     * Returns how long to back off if the error is a 429, or null for any other error.
+     */
+    static Duration throttledRetryAfter(Throwable error) {
+        if (statusCodeOf(error) != 429) {
+            return null;
+        }
+        String retryAfter = ((HttpResponseException) error).getResponse().getHeaderValue("Retry-After");
+        if (retryAfter == null) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Duration untilDate = Duration.between(OffsetDateTime.now(),
+                        OffsetDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException notDate) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+}
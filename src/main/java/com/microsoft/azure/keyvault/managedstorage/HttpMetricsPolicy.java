@@ -0,0 +1,105 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the latency and outcome of every HTTP attempt, per service: "arm", "keyvault", "blob" or "other".
+ *
+ * The resource manager and the storage client builders place added policies after their retry policy, so this
+ * policy sees every attempt and counts the attempts after the first one of a call as retries. Responses with
+ * status 429 are counted as throttled, other 5xx responses as server errors and attempts that got no response as
+ * failures.
+ *
+ * The metrics of a service are looked up once, when one of its hosts is first seen, and kept per host, so an attempt
+ * only costs a map lookup by host and a few increments.
+ */
+public class HttpMetricsPolicy implements HttpPipelinePolicy {
+
+    private static final String ATTEMPT_KEY = "sample-metrics-attempt";
+
+    private final SampleMetrics metrics;
+    private final ConcurrentHashMap<String, ServiceMetrics> servicesByName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ServiceMetrics> servicesByHost = new ConcurrentHashMap<>();
+
+    public HttpMetricsPolicy(SampleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        ServiceMetrics service = serviceMetrics(context.getHttpRequest().getUrl().getHost());
+        // The call context is reused for every attempt of a call, so it carries the attempt count.
+        int attempt = (Integer) context.getData(ATTEMPT_KEY).orElse(0);
+        context.setData(ATTEMPT_KEY, attempt + 1);
+        service.requests.increment();
+        if (attempt > 0) {
+            service.retries.increment();
+        }
+
+        long start = System.nanoTime();
+        return next.process()
+                .doOnSuccess(response -> {
+                    service.latency.record(System.nanoTime() - start);
+                    int statusCode = response.getStatusCode();
+                    if (statusCode == 429) {
+                        service.throttled.increment();
+                    } else if (statusCode >= 500) {
+                        service.serverErrors.increment();
+                    }
+                })
+                .doOnError(error -> {
+                    service.latency.record(System.nanoTime() - start);
+                    service.failures.increment();
+                });
+    }
+
+    private ServiceMetrics serviceMetrics(String host) {
+        ServiceMetrics service = servicesByHost.get(host);
+        return service != null ? service : servicesByHost.computeIfAbsent(host,
+                ignored -> servicesByName.computeIfAbsent(serviceOf(host), name -> new ServiceMetrics(metrics, name)));
+    }
+
+    private static String serviceOf(String host) {
+        String lowerHost = host.toLowerCase(Locale.ROOT);
+        if (lowerHost.startsWith("management.")) {
+            return "arm";
+        }
+        if (lowerHost.contains(".vault.")) {
+            return "keyvault";
+        }
+        if (lowerHost.contains(".blob.")) {
+            return "blob";
+        }
+        return "other";
+    }
+
+    /**
+     * The metrics of one service, named "http.<service>" and "http.<service>.<outcome>".
+     */
+    private static final class ServiceMetrics {
+        private final LatencyHistogram latency;
+        private final LongAdder requests;
+        private final LongAdder retries;
+        private final LongAdder throttled;
+        private final LongAdder serverErrors;
+        private final LongAdder failures;
+
+        ServiceMetrics(SampleMetrics metrics, String service) {
+            String prefix = "http." + service;
+            latency = metrics.histogram(prefix);
+            requests = metrics.counter(prefix + ".requests");
+            retries = metrics.counter(prefix + ".retries");
+            throttled = metrics.counter(prefix + ".throttled");
+            serverErrors = metrics.counter(prefix + ".serverErrors");
+            failures = metrics.counter(prefix + ".failures");
+        }
+    }
+}
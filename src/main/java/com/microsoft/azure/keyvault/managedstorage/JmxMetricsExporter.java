@@ -0,0 +1,123 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes SampleMetrics as a single MBean, com.microsoft.azure.keyvault.managedstorage:type=SampleMetrics.
+ *
+ * Every counter is an attribute of its own. Every histogram is published as count, mean, p50, p90, p99 and max
+ * attributes, the latencies in milliseconds. The attributes are read from the metrics on every access, so metrics
+ * created after registration show up as well.
+ */
+public final class JmxMetricsExporter implements MetricsExporter, DynamicMBean {
+
+    private final SampleMetrics metrics;
+    private final ObjectName objectName;
+
+    private JmxMetricsExporter(SampleMetrics metrics, ObjectName objectName) {
+        this.metrics = metrics;
+        this.objectName = objectName;
+    }
+
+    /**
+     * Registers the MBean for the metrics with the platform MBean server.
+     */
+    public static JmxMetricsExporter start(SampleMetrics metrics) {
+        try {
+            JmxMetricsExporter exporter = new JmxMetricsExporter(metrics,
+                    new ObjectName("com.microsoft.azure.keyvault.managedstorage:type=SampleMetrics"));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(exporter, exporter.objectName);
+            return exporter;
+        } catch (JMException e) {
+            throw new IllegalStateException("Registering the metrics MBean failed", e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = attributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Object> values = attributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            if (values.containsKey(name)) {
+                list.add(new Attribute(name, values.get(name)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("The metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("The metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        attributes().forEach((name, value) -> infos.add(new MBeanAttributeInfo(
+                name, value.getClass().getName(), name, true, false, false)));
+        return new MBeanInfo(getClass().getName(), "Sample workflow metrics",
+                infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private Map<String, Object> attributes() {
+        Map<String, Object> values = new TreeMap<>(metrics.counters());
+        metrics.histograms().forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.count());
+            values.put(name + ".meanMillis", histogram.mean() / TimeUnit.MILLISECONDS.toNanos(1));
+            values.put(name + ".p50Millis", millis(histogram.valueAtPercentile(50)));
+            values.put(name + ".p90Millis", millis(histogram.valueAtPercentile(90)));
+            values.put(name + ".p99Millis", millis(histogram.valueAtPercentile(99)));
+            values.put(name + ".maxMillis", millis(histogram.max()));
+        });
+        return values;
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Key;
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.security.keyvault.keys.models.KeyCurveName;
+import com.azure.security.keyvault.keys.models.KeyOperation;
+import com.azure.security.keyvault.keys.models.KeyType;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a number of ready RSA keys in each vault, so that encrypting a storage account with a new key doesn't wait
+ * for the key to be created.
+ *
+ * take() hands out a ready key if the vault has one and creates one on the spot otherwise. Either way the vault's
+ * pool is then topped up in the background. The first key of a new vault is therefore created on demand, and later
+ * onboardings and key switches in the same vault only wait for the encryption update. Pooled keys get generated
+ * names. Keys that are still in the pool when the process exits stay in the vault unused.
+ */
+public class KeyPool {
+
+    private static final LongAdder HITS = SampleMetrics.shared().counter("keyPool.hits");
+    private static final LongAdder MISSES = SampleMetrics.shared().counter("keyPool.misses");
+
+    private final int size;
+    private final ConcurrentHashMap<String, VaultKeys> vaults = new ConcurrentHashMap<>();
+
+    /**
+     * @param size the number of ready keys kept per vault
+     */
+    public KeyPool(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Starts filling the pool of the vault, e.g. right after the vault was created.
+     */
+    public void warm(Vault vault) {
+        keysOf(vault).replenish();
+    }
+
+    /**
+     * Emits a ready key of the vault, or a newly created one if none is ready, and tops up the pool.
+     */
+    public Mono<Key> take(Vault vault) {
+        return Mono.defer(() -> {
+            VaultKeys keys = keysOf(vault);
+            Key ready = keys.ready.poll();
+            if (ready != null) {
+                HITS.increment();
+                keys.replenish();
+                return Mono.just(ready);
+            }
+            MISSES.increment();
+            return newKey(vault).doOnSuccess(ignored -> keys.replenish());
+        });
+    }
+
+    /**
+     * Returns the number of keys ready in the vault.
+     */
+    public int readyCount(Vault vault) {
+        VaultKeys keys = vaults.get(idOf(vault));
+        return keys == null ? 0 : keys.ready.size();
+    }
+
+    /**
+     * Creates a key for encrypting storage accounts with the given name.
+     */
+    static Mono<Key> newKey(Vault vault, String keyName) {
+        return vault.keys()
+                .define(keyName)
+                .withKeyTypeToCreate(KeyType.RSA)
+                .withKeyCurveName(KeyCurveName.P_256)
+                .withKeyOperations(
+                        KeyOperation.UNWRAP_KEY,
+                        KeyOperation.WRAP_KEY,
+                        KeyOperation.DECRYPT,
+                        KeyOperation.ENCRYPT,
+                        KeyOperation.SIGN,
+                        KeyOperation.VERIFY)
+                .withKeySize(2048)
+                .createAsync();
+    }
+
+    private static Mono<Key> newKey(Vault vault) {
+        return newKey(vault, "pooled-" + UUID.randomUUID())
+                .transform(SampleMetrics.shared().timed("keyPool.create"));
+    }
+
+    private VaultKeys keysOf(Vault vault) {
+        VaultKeys keys = vaults.computeIfAbsent(idOf(vault), ignored -> new VaultKeys());
+        // Keeps the latest model, whose key client is used for replenishing.
+        keys.vault = vault;
+        return keys;
+    }
+
+    private static String idOf(Vault vault) {
+        return vault.id().toLowerCase(Locale.ROOT);
+    }
+
+    private final class VaultKeys {
+        private final Queue<Key> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger creating = new AtomicInteger();
+        private volatile Vault vault;
+
+        // Starts as many creations as the pool is short of keys. A failed creation is not retried until the next
+        // take() or warm().
+        void replenish() {
+            while (true) {
+                int inFlight = creating.get();
+                if (ready.size() + inFlight >= size) {
+                    return;
+                }
+                if (creating.compareAndSet(inFlight, inFlight + 1)) {
+                    newKey(vault)
+                            .doFinally(ignored -> creating.decrementAndGet())
+                            .subscribe(ready::add, error -> System.out.printf(
+                                    "Could not add a key to the pool of vault %s: %s%n", vault.name(), error));
+                }
+            }
+        }
+    }
+}
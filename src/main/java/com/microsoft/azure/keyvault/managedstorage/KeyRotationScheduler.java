@@ -0,0 +1,130 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Regenerates the keys of many storage accounts, the fleet-wide counterpart of regenerateStorageAccountKeys().
+ *
+ * Each account alternates between key1 and key2: the key that was regenerated last is the active one and the other is
+ * rotated, so the active key stays valid for clients that have not picked up the new one yet. Which key is active is
+ * read from the key creation times of the account, so the alternation carries over between processes as long as the
+ * accounts are listed fresh. Start times are spread randomly over the rotation window and calls share a token bucket.
+ * Throttled calls wait for the Retry-After period before they are tried again, other transient failures back off.
+ */
+public class KeyRotationScheduler {
+
+    private static final String KEY1 = "key1";
+    private static final String KEY2 = "key2";
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final int concurrency;
+    private final int maxRetries;
+
+    public KeyRotationScheduler(TokenBucketRateLimiter rateLimiter, int concurrency, int maxRetries) {
+        this.rateLimiter = rateLimiter;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Rotates one key of every account, starting each at a random time within the window. A failed rotation is
+     * reported in its result instead of failing the run.
+     */
+    public Flux<RotationResult> rotate(Collection<StorageAccount> storageAccounts, Duration window) {
+        return Flux.fromIterable(storageAccounts)
+                .flatMap(storageAccount -> Mono.delay(jitter(window)).thenReturn(storageAccount), Math.max(1, storageAccounts.size()))
+                .flatMap(storageAccount -> rotate(storageAccount, nextKeyName(storageAccount), 0), concurrency);
+    }
+
+    // Rotates the key that isn't active, i.e. the older one. key1 is rotated first when the creation times are
+    // missing or equal, as they are for a new account.
+    static String nextKeyName(StorageAccount storageAccount) {
+        Map<String, OffsetDateTime> keyCreationTimes = storageAccount.innerModel().keyCreationTime();
+        if (keyCreationTimes == null) {
+            return KEY1;
+        }
+        OffsetDateTime key1Created = keyCreationTimes.get(KEY1);
+        OffsetDateTime key2Created = keyCreationTimes.get(KEY2);
+        if (key1Created == null || key2Created == null) {
+            return key1Created == null ? KEY1 : KEY2;
+        }
+        return key1Created.isAfter(key2Created) ? KEY2 : KEY1;
+    }
+
+    private Mono<RotationResult> rotate(StorageAccount storageAccount, String keyName, int attempt) {
+        return rateLimiter.acquire()
+                .then(Mono.defer(() -> storageAccount.regenerateKeyAsync(keyName))
+                        .transform(SampleMetrics.shared().timed("storageAccount.regenerateKey")))
+                .map(keys -> {
+                    rateLimiter.onSuccess();
+                    return new RotationResult(storageAccount, keyName, null);
+                })
+                .onErrorResume(error -> {
+                    if (!HttpErrors.isTransient(error) || attempt >= maxRetries) {
+                        return Mono.just(new RotationResult(storageAccount, keyName, error));
+                    }
+                    Duration retryAfter = HttpErrors.throttledRetryAfter(error);
+                    if (retryAfter != null) {
+                        System.out.printf("Rotating %s of %s was throttled, retrying in %ds%n",
+                                keyName, storageAccount.name(), retryAfter.getSeconds());
+                        // The token bucket holds back every call until the Retry-After period has passed.
+                        rateLimiter.onThrottled(retryAfter);
+                        return rotate(storageAccount, keyName, attempt + 1);
+                    }
+                    Duration backoff = backoff(attempt);
+                    System.out.printf("Rotating %s of %s failed with %s, retrying in %dms%n",
+                            keyName, storageAccount.name(), error.getMessage(), backoff.toMillis());
+                    return Mono.delay(backoff).then(rotate(storageAccount, keyName, attempt + 1));
+                });
+    }
+
+    // Exponential backoff from half a second, with jitter so that accounts that failed together don't retry together.
+    private static Duration backoff(int attempt) {
+        long millis = 500L << Math.min(attempt, 6);
+        return Duration.ofMillis(millis + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+
+    private static Duration jitter(Duration window) {
+        long windowMillis = window.toMillis();
+        return windowMillis <= 0 ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(windowMillis));
+    }
+
+    /**
+     * The outcome of rotating one key of one account.
+     */
+    public static class RotationResult {
+        private final StorageAccount storageAccount;
+        private final String keyName;
+        private final Throwable error;
+
+        RotationResult(StorageAccount storageAccount, String keyName, Throwable error) {
+            this.storageAccount = storageAccount;
+            this.keyName = keyName;
+            this.error = error;
+        }
+
+        public StorageAccount storageAccount() {
+            return storageAccount;
+        }
+
+        public String keyName() {
+            return keyName;
+        }
+
+        public Throwable error() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Class to demonstrate Key Vault Managed Storage.
+ *
+ * demonstrateStorageAccountManagement() must be run first to create a vault and storage account.
+ *
+ * Every workflow method has an Async variant on the asynchronous resource manager APIs that returns a Mono or Flux
+ * and holds no thread while ARM works. The Async variants do nothing until subscribed, so they can be chained in
+ * the order above; the blocking methods wait for their Async variant.
+ */
+public class KeyVaultManagedStorageSamples extends KeyVaultSampleBase {
+
+    private String vaultName;
+    private String vaultUri;
+    private String storageAccountName;
+    private StorageAccount storageAccount;
+    private Vault vault;
+    private final StorageAccountInventory inventory;
+
+    public KeyVaultManagedStorageSamples() {
+        super();
+        inventory = new StorageAccountInventory(azureManagers, AccessTokenUtils.RESOURCE_GROUP);
+    }
+
+    /**
+     * Creates a storage account then adds the storage account to the vault to manage its keys.
+     */
+    public void demonstrateStorageAccountManagement() {
+        demonstrateStorageAccountManagementAsync().block();
+    }
+
+    /**
+     * Creates a storage account then adds the storage account to the vault to manage its keys, without blocking.
+     */
+    public Mono<Void> demonstrateStorageAccountManagementAsync() {
+        return Mono.defer(() -> {
+            storageAccountName = azureManagers.randomResourceName("storage", 15);
+
+            // Setting the storage acocunt can only be called by a user account with access to the keys of the storage account.
+            // Therefore, the provisioner grants the user that created the storage account access to the vault
+            // as well as the storage account. The account is put in one of the vaults shared by the samples.
+            return new StorageAccountProvisioner(azureManagers, roleDefinitionResolver)
+                    .withUpdater(storageAccountUpdater)
+                    .withPlacement(vaultPlacement)
+                    .withKeyPool(keyPool)
+                    .provision(new StorageAccountProvisioner.AccountSpec(storageAccountName));
+        }).doOnNext(provisioned -> {
+            storageAccount = provisioned.storageAccount();
+            vault = provisioned.vault();
+            vaultName = vault.name();
+            vaultUri = vault.vaultUri();
+        }).then();
+    }
+
+    /**
+     * Updates a storage account in the vault.
+     */
+    public void updateStorageAccount() {
+        updateStorageAccountAsync().block();
+    }
+
+    /**
+     * Updates a storage account in the vault, without blocking.
+     */
+    public Mono<Void> updateStorageAccountAsync() {
+        // Switch the active key for the storage account
+        // Update the key regeneration period
+        // Stop rotating the storage account keys
+        // The new key is usually ready in the pool, filled since the vault's first key was taken.
+        return Mono.defer(() -> keyPool.take(vault)
+                .doOnSubscribe(ignored -> System.out.println(
+                        "Updating storage account active key, regeneration period, and disabling automatic key regeneration."))
+                // Only updates the account if it isn't already encrypted with the key.
+                .flatMap(keyVaultKey -> storageAccountUpdater.ensure(storageAccount,
+                        new StorageAccountUpdater.DesiredState()
+                                .withEncryptionKeyFromKeyVault(vaultUri, keyVaultKey.name())))
+                .doOnNext(updated -> storageAccount = updated)
+                .then());
+    }
+
+    /**
+     * Regenerates a key of a storage account managed by the vault.
+     */
+    public void regenerateStorageAccountKeys() {
+        regenerateStorageAccountKeysAsync().block();
+    }
+
+    /**
+     * Regenerates a key of a storage account managed by the vault, without blocking.
+     */
+    public Mono<Void> regenerateStorageAccountKeysAsync() {
+        // Regenerate storage account keys by calling regenerateStorageAccountKey
+        // Note that regenerateStorageAccountKey method can only be called by a user account
+        // Not a servicePrincipal so we use the keyVaultClient created in the base sample.
+        return Mono.defer(() -> storageAccount.regenerateKeyAsync("key1"))
+                .transform(SampleMetrics.shared().timed("storageAccount.regenerateKey"))
+                .doOnSubscribe(ignored -> System.out.println("Regenerating storage account keys"))
+                // Tokens signed with the old key no longer validate.
+                .doOnSuccess(keys -> sasTokenCache.invalidate(storageAccount.name()))
+                .then();
+    }
+
+    /**
+     * Regenerates a key of every storage account managed by the vault, spread over the given window.
+     */
+    public void rotateVaultManagedAccountKeys(Duration window) {
+        System.out.println("Rotating keys of all storage accounts managed by the vault");
+        // Listed fresh, so that the key creation times that decide which key is rotated are current.
+        inventory.refresh().block();
+        keyRotationScheduler.rotate(inventory.accountsForVault(vaultUri), window)
+                .doOnNext(result -> {
+                    System.out.printf("%s %s of %s%n",
+                            result.isSuccessful() ? "Rotated" : "Failed to rotate", result.keyName(), result.storageAccount().name());
+                    if (result.isSuccessful()) {
+                        sasTokenCache.invalidate(result.storageAccount().name());
+                    }
+                })
+                .blockLast();
+    }
+
+    /**
+     * Lists the storage accounts in the vault, then gets each.
+     */
+    public void getStorageAccounts() {
+        getStorageAccountsAsync().blockLast();
+    }
+
+    /**
+     * Lists the storage accounts in the vault and emits each, without blocking.
+     */
+    public Flux<StorageAccount> getStorageAccountsAsync() {
+        // List the storage accounts in the resource group and index them by the vault holding their key.
+        return inventory.refresh()
+                .doOnSubscribe(ignored -> System.out.println("List and get storage accounts managed by the vault"))
+                .then(Mono.defer(() -> inventory.accountsForVaultAsync(vaultUri)))
+                .flatMapIterable(storageAccounts -> storageAccounts)
+                .doOnNext(storageAccount -> System.out.println(storageAccount.id()));
+    }
+
+    /**
+     * Deletes a storage account from the vault.
+     */
+    public void deleteStorageAccount() {
+        deleteStorageAccountAsync().block();
+    }
+
+    /**
+     * Deletes a storage account from the vault, without blocking.
+     */
+    public Mono<Void> deleteStorageAccountAsync() {
+        //Deletes a storage account from a vault.
+        return Mono.defer(() -> inventory.accountsForVaultAsync(vaultUri))
+                .doOnSubscribe(ignored -> System.out.printf("Delete storage account %s from the vault %n", storageAccountName))
+                .flatMapIterable(storageAccounts -> storageAccounts)
+                .filter(storageAccount -> storageAccountName.equals(storageAccount.name()))
+                .flatMap(storageAccount -> azureManagers.storage().storageAccounts().deleteByIdAsync(storageAccount.id())
+                        .doOnSuccess(ignored -> {
+                            inventory.remove(storageAccount);
+                            vaultPlacement.release(storageAccount.name());
+                        }))
+                .then();
+    }
+
+
+}
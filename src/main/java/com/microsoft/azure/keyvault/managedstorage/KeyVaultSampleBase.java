@@ -0,0 +1,56 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.http.HttpClient;
+import com.azure.resourcemanager.resources.fluentcore.utils.ResourceManagerUtils;
+
+import java.time.Duration;
+
+public class KeyVaultSampleBase {
+
+    // Set when AZURE_SAMPLES_MOCK=true; the samples then talk to the in-process stand-in instead of Azure.
+    protected static final MockAzureHttpClient mockHttpClient = MockAzureHttpClient.fromEnvironment();
+
+    private static final HttpClient httpClient = mockHttpClient != null ? mockHttpClient : HttpClient.createDefault();
+
+    static {
+        if (mockHttpClient != null) {
+            AccessTokenUtils.setUserOid(MockAzureHttpClient.USER_OBJECT_ID);
+            // The resource manager otherwise waits 30 seconds between polls of a long-running operation.
+            ResourceManagerUtils.InternalRuntimeContext.setDelayProvider(delay -> mockHttpClient.pollInterval());
+        }
+    }
+
+    // Shared by all samples so that the user signs in once per process. Each manager is only created when a sample
+    // first uses it.
+    protected static final AzureManagers azureManagers = new AzureManagers(mockHttpClient != null
+            ? mockHttpClient::credential
+            : () -> new SampleTokenCredential(AccessTokenUtils.AZURE_TENANT_ID, AccessTokenUtils.CLIENT_ID), httpClient);
+
+    // Shared by all samples so a role is only looked up once per process.
+    protected static final RoleDefinitionResolver roleDefinitionResolver = new RoleDefinitionResolver(azureManagers);
+
+    // Shared by all samples so that key regenerations invalidate the keys and tokens every sample has cached.
+    protected static final SasTokenCache sasTokenCache = new SasTokenCache(0.5, Duration.ofMinutes(5));
+
+    // Shared by all samples so that an account one sample has just fetched or updated isn't fetched again.
+    protected static final StorageAccountUpdater storageAccountUpdater = new StorageAccountUpdater(Duration.ofMinutes(5));
+
+    // Shared by all samples so that accounts are put in a few vaults instead of getting one each. A new vault is
+    // only created once the existing ones, including those earlier runs left in the resource group, hold 100 accounts.
+    protected static final VaultPlacement vaultPlacement = new VaultPlacement(azureManagers, 100,
+            () -> azureManagers.randomResourceName("vault", 15))
+            .withInventory(new StorageAccountInventory(azureManagers, AccessTokenUtils.RESOURCE_GROUP));
+
+    // Shared by all samples so that all key regenerations go through one rate limit.
+    protected static final KeyRotationScheduler keyRotationScheduler =
+            new KeyRotationScheduler(new TokenBucketRateLimiter(5, 10), 16, 5);
+
+    // Shared by all samples so that onboarding into a shared vault, or a key switch, can take a key created ahead of
+    // time. Only used with the placement above, where a vault gets more than one key, since every key left in the
+    // pool stays in its vault unused.
+    protected static final KeyPool keyPool = new KeyPool(1);
+
+    // Shared by all samples so that blob clients reuse one connection pool and their pipelines.
+    protected static final BlobClientRegistry blobClients = new BlobClientRegistry(httpClient, Duration.ofMinutes(10));
+
+}
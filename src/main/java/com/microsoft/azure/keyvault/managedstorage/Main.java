@@ -0,0 +1,125 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.common.sas.SasProtocol;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the samples. The first argument picks what to run: "all" (the default) runs every sample, "managed-storage"
+ * and "sas" run one of them, and "sign-urls" issues pre-signed blob URLs with the account key in
+ * AZURE_STORAGE_ACCOUNT_KEY for the account in AZURE_STORAGE_ACCOUNT, optionally followed by the number of URLs.
+ *
+ * The resource managers are only created once a sample needs them, so "sign-urls" never loads them. How long the
+ * JVM, the managers and the command took is reported at the end.
+ */
+public class Main {
+
+    public static void main(String[] args) throws IOException {
+        // The time the JVM took to get here, before any sample class is loaded.
+        long jvmStartup = ManagementFactory.getRuntimeMXBean().getUptime();
+        long start = System.nanoTime();
+        String command = args.length > 0 ? args[0] : "all";
+        // Every command but sign-urls goes through KeyVaultSampleBase, and with it the sign in.
+        boolean signsIn = !"sign-urls".equals(command);
+        MetricsExporter metricsExporter = MetricsExporter.fromEnvironment(SampleMetrics.shared());
+        try {
+            switch (command) {
+                case "all":
+                    runManagedStorageSample();
+                    runSasSample();
+                    break;
+                case "managed-storage":
+                    runManagedStorageSample();
+                    break;
+                case "sas":
+                    runSasSample();
+                    break;
+                case "sign-urls":
+                    signUrls(args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + command
+                            + ", expected all, managed-storage, sas or sign-urls");
+            }
+            // Only looked at by the commands that went through KeyVaultSampleBase, so the others don't load it.
+            if (signsIn && KeyVaultSampleBase.mockHttpClient != null) {
+                System.out.printf("The mock served %d requests, %d of them throttled%n",
+                        KeyVaultSampleBase.mockHttpClient.requestCount(), KeyVaultSampleBase.mockHttpClient.throttledCount());
+            }
+            SampleMetrics.shared().print(System.out);
+            printColdStart(command, jvmStartup, System.nanoTime() - start);
+        } finally {
+            // Shutting down would create the token acquisition engine for a command that never used it.
+            if (signsIn) {
+                AccessTokenUtils.shutdown();
+            }
+            if (metricsExporter != null) {
+                metricsExporter.close();
+            }
+        }
+    }
+
+    private static void runManagedStorageSample() {
+        KeyVaultManagedStorageSamples msakSamples = new KeyVaultManagedStorageSamples();
+        msakSamples.demonstrateStorageAccountManagement();
+        msakSamples.updateStorageAccount();
+        msakSamples.regenerateStorageAccountKeys();
+        msakSamples.rotateVaultManagedAccountKeys(Duration.ofSeconds(2));
+        msakSamples.getStorageAccounts();
+        msakSamples.deleteStorageAccount();
+    }
+
+    private static void runSasSample() throws IOException {
+        SasDefinitionSample sasDefSample = new SasDefinitionSample();
+        sasDefSample.createAccountSasDefinition();
+        sasDefSample.createBlobSasDefinition();
+        sasDefSample.transferFileWithBlobSas();
+        sasDefSample.issueBlobSasUrls();
+    }
+
+    // Signs with the account key alone, so neither a sign in nor a resource manager is needed.
+    private static void signUrls(int count) throws IOException {
+        String storageAccountName = System.getenv("AZURE_STORAGE_ACCOUNT");
+        String storageAccountKey = System.getenv("AZURE_STORAGE_ACCOUNT_KEY");
+        if (storageAccountName == null || storageAccountKey == null) {
+            throw new IllegalStateException("Set AZURE_STORAGE_ACCOUNT and AZURE_STORAGE_ACCOUNT_KEY to sign URLs");
+        }
+        OffsetDateTime expiry = OffsetDateTime.now().plusHours(1);
+        BlobSasPermission readPermission = BlobSasPermission.parse("r");
+        List<SasBatchIssuer.BlobSasRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new SasBatchIssuer.BlobSasRequest("cloudstorageblob", "reports/report" + i + ".csv",
+                    readPermission, expiry));
+        }
+        SasBatchIssuer sasBatchIssuer = new SasBatchIssuer(new SasSigner(storageAccountName, storageAccountKey),
+                "https://" + storageAccountName + ".blob.core.windows.net", SasProtocol.HTTPS_ONLY);
+        StringBuilder urls = new StringBuilder(requests.size() * 256);
+        sasBatchIssuer.writeTo(requests, urls);
+        System.out.printf("Issued %d pre-signed blob URLs, the first is %s%n", requests.size(),
+                urls.substring(0, Math.max(0, urls.indexOf("\n"))));
+    }
+
+    private static void printColdStart(String command, long jvmStartup, long commandNanos) {
+        System.out.printf("Cold start of %s: JVM started in %d ms, command took %d ms, %d classes loaded%n",
+                command, jvmStartup, Duration.ofNanos(commandNanos).toMillis(),
+                ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        boolean managersCreated = false;
+        for (Map.Entry<String, LatencyHistogram> entry : SampleMetrics.shared().histograms().entrySet()) {
+            if (entry.getKey().startsWith("startup.")) {
+                System.out.printf("  %s created in %d ms%n", entry.getKey().substring("startup.".length()),
+                        Duration.ofNanos(entry.getValue().max()).toMillis());
+                managersCreated = true;
+            }
+        }
+        if (!managersCreated) {
+            System.out.println("  No resource manager was created");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import java.io.IOException;
+
+/**
+ * Publishes SampleMetrics outside the process until closed.
+ */
+public interface MetricsExporter extends AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * Returns the exporter selected by AZURE_SAMPLES_METRICS, "jmx" or "prometheus", or null if it is not set. The
+     * Prometheus endpoint listens on localhost at AZURE_SAMPLES_METRICS_PORT, 9464 by default.
+     */
+    static MetricsExporter fromEnvironment(SampleMetrics metrics) throws IOException {
+        String exporter = System.getenv("AZURE_SAMPLES_METRICS");
+        if ("jmx".equalsIgnoreCase(exporter)) {
+            return JmxMetricsExporter.start(metrics);
+        }
+        if ("prometheus".equalsIgnoreCase(exporter)) {
+            String port = System.getenv("AZURE_SAMPLES_METRICS_PORT");
+            return PrometheusMetricsExporter.start(metrics, port == null || port.isEmpty() ? 9464 : Integer.parseInt(port));
+        }
+        return null;
+    }
+}
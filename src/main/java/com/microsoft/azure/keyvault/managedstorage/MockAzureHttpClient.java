@@ -0,0 +1,831 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.util.DateTimeRfc1123;
+import com.azure.core.util.FluxUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for the ARM, Key Vault and Blob endpoints the samples call, so the provisioning and SAS
+ * flows can be load tested without an Azure subscription.
+ *
+ * Storage accounts, vaults, keys, role assignments, containers and blobs are kept in memory. Deleted vaults are kept
+ * until they are purged, which vaults with purge protection refuse, as soft delete does. Every response is
+ * delayed by the configured latency, the configured share of requests is throttled (with a 429, or a 503 for blob
+ * requests as the storage service does), and storage accounts are created through a long-running operation that
+ * has to be polled the configured number of times. Credentials and signatures are not validated.
+ *
+ * Set AZURE_SAMPLES_MOCK=true to make KeyVaultSampleBase use it; see fromEnvironment for the other settings.
+ */
+public class MockAzureHttpClient implements HttpClient {
+
+    // The object id reported for the signed in user, since no token is ever acquired.
+    public static final String USER_OBJECT_ID = "00000000-0000-0000-0000-000000000001";
+
+    private static final String OPERATIONS_PATH = "/mock/operations/";
+    private static final String STORAGE_ACCOUNTS = "/providers/microsoft.storage/storageaccounts";
+    private static final String VAULTS = "/providers/microsoft.keyvault/vaults/";
+    private static final String ROLE_DEFINITIONS = "/providers/microsoft.authorization/roledefinitions";
+    private static final String ROLE_ASSIGNMENTS = "/providers/microsoft.authorization/roleassignments/";
+    private static final String ROLE_ASSIGNMENTS_AT_SCOPE = "/providers/microsoft.authorization/roleassignments";
+    private static final String DELETED_VAULTS = "/deletedvaults/";
+    private static final Pattern ROLE_NAME_FILTER = Pattern.compile("roleName eq '([^']*)'");
+    private static final Pattern BLOCK_LIST_ENTRY = Pattern.compile("<(?:Latest|Uncommitted|Committed)>([^<]*)</");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Duration latency = Duration.ZERO;
+    private double throttleRate;
+    private Duration retryAfter = Duration.ofSeconds(1);
+    private int longRunningOperationPolls = 1;
+    private Duration pollInterval = Duration.ofMillis(100);
+
+    private final Map<String, ObjectNode> storageAccounts = new ConcurrentHashMap<>();
+    private final Map<String, String[]> storageAccountKeys = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> vaults = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> deletedVaults = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> keys = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> roleAssignments = new ConcurrentHashMap<>();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, String> containers = new ConcurrentHashMap<>();
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> uncommittedBlocks = new ConcurrentHashMap<>();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+
+    /**
+     * Returns a client configured from the environment, or null if AZURE_SAMPLES_MOCK is not set to true.
+     *
+     * AZURE_SAMPLES_MOCK_LATENCY_MS sets the latency of every response (default 20),
+     * AZURE_SAMPLES_MOCK_THROTTLE_RATE the share of throttled requests (default 0) and
+     * AZURE_SAMPLES_MOCK_LRO_POLLS the number of polls before a storage account is created (default 1) and
+     * AZURE_SAMPLES_MOCK_POLL_INTERVAL_MS the interval between those polls (default 100).
+     */
+    public static MockAzureHttpClient fromEnvironment() {
+        if (!Boolean.parseBoolean(System.getenv("AZURE_SAMPLES_MOCK"))) {
+            return null;
+        }
+        return new MockAzureHttpClient()
+                .withLatency(Duration.ofMillis(Long.parseLong(getenv("AZURE_SAMPLES_MOCK_LATENCY_MS", "20"))))
+                .withThrottleRate(Double.parseDouble(getenv("AZURE_SAMPLES_MOCK_THROTTLE_RATE", "0")))
+                .withLongRunningOperationPolls(Integer.parseInt(getenv("AZURE_SAMPLES_MOCK_LRO_POLLS", "1")))
+                .withPollInterval(Duration.ofMillis(Long.parseLong(getenv("AZURE_SAMPLES_MOCK_POLL_INTERVAL_MS", "100"))));
+    }
+
+    private static String getenv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Sets how long every response is delayed.
+     */
+    public MockAzureHttpClient withLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests, between 0 and 1, that are throttled.
+     */
+    public MockAzureHttpClient withThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * Sets the Retry-After interval sent with throttled responses.
+     */
+    public MockAzureHttpClient withRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * Sets how often a storage account creation has to be polled before it completes.
+     */
+    public MockAzureHttpClient withLongRunningOperationPolls(int longRunningOperationPolls) {
+        this.longRunningOperationPolls = longRunningOperationPolls;
+        return this;
+    }
+
+    /**
+     * Sets the interval clients should wait between polls of a long-running operation.
+     */
+    public MockAzureHttpClient withPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    public Duration pollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Returns a credential that hands out a dummy token for any scope.
+     */
+    public TokenCredential credential() {
+        return request -> Mono.just(new AccessToken("mock-access-token", OffsetDateTime.now().plusHours(1)));
+    }
+
+    public long requestCount() {
+        return requestCount.sum();
+    }
+
+    public long throttledCount() {
+        return throttledCount.sum();
+    }
+
+    @Override
+    public Mono<HttpResponse> send(HttpRequest request) {
+        Mono<byte[]> body = request.getBody() == null
+                ? Mono.just(new byte[0])
+                : FluxUtil.collectBytesInByteBufferStream(request.getBody()).defaultIfEmpty(new byte[0]);
+        Mono<HttpResponse> response = body.map(bytes -> respond(request, bytes));
+        return latency.isZero() ? response : Mono.delay(latency).then(response);
+    }
+
+    private HttpResponse respond(HttpRequest request, byte[] body) {
+        requestCount.increment();
+        String host = request.getUrl().getHost().toLowerCase(Locale.ROOT);
+        if (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+            throttledCount.increment();
+            return host.contains(".blob.")
+                    ? blobError(request, 503, "ServerBusy", "The server is busy.")
+                            .withHeader("Retry-After", String.valueOf(retryAfter.getSeconds()))
+                    : armError(request, 429, "TooManyRequests", "The request is being throttled.")
+                            .withHeader("Retry-After", String.valueOf(retryAfter.getSeconds()));
+        }
+        try {
+            if (host.contains(".blob.")) {
+                return blob(request, body);
+            }
+            if (host.contains(".vault.")) {
+                return keyVault(request, body);
+            }
+            return resourceManager(request, body);
+        } catch (IOException e) {
+            return armError(request, 400, "InvalidRequestContent", e.getMessage());
+        }
+    }
+
+    // Resource manager
+
+    private HttpResponse resourceManager(HttpRequest request, byte[] body) throws IOException {
+        // Calls at a scope, like role assignments, put a second slash before the scope, which ARM ignores.
+        String path = request.getUrl().getPath().replaceFirst("^/+", "/");
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        if (lowerPath.startsWith(OPERATIONS_PATH)) {
+            return pollOperation(request, path.substring(OPERATIONS_PATH.length()));
+        }
+        int index;
+        if (lowerPath.endsWith(ROLE_ASSIGNMENTS_AT_SCOPE)) {
+            return roleAssignmentsAtScope(request, path.substring(0, path.length() - ROLE_ASSIGNMENTS_AT_SCOPE.length()));
+        }
+        if ((index = lowerPath.indexOf(ROLE_ASSIGNMENTS)) >= 0) {
+            return roleAssignment(request, path, path.substring(0, index), body);
+        }
+        if (lowerPath.contains(ROLE_DEFINITIONS)) {
+            return roleDefinition(request, path);
+        }
+        if ((index = lowerPath.indexOf(STORAGE_ACCOUNTS)) >= 0) {
+            return storageAccount(request, path, index + STORAGE_ACCOUNTS.length(), body);
+        }
+        if ((index = lowerPath.indexOf(VAULTS)) >= 0) {
+            return vault(request, path, index + VAULTS.length(), body);
+        }
+        if ((index = lowerPath.indexOf(DELETED_VAULTS)) >= 0) {
+            return deletedVault(request, path, index + DELETED_VAULTS.length());
+        }
+        return armError(request, 501, "NotImplemented", "The mock does not emulate " + request.getHttpMethod() + " " + path);
+    }
+
+    private HttpResponse storageAccount(HttpRequest request, String path, int nameStart, byte[] body) throws IOException {
+        String[] segments = path.substring(nameStart).split("/");
+        if (segments.length < 2) {
+            if (request.getHttpMethod() != HttpMethod.GET) {
+                return armError(request, 405, "MethodNotAllowed", "Unsupported method " + request.getHttpMethod());
+            }
+            // Lists the accounts of the subscription or resource group the path starts with.
+            String scope = path.substring(0, nameStart - STORAGE_ACCOUNTS.length()).toLowerCase(Locale.ROOT) + "/";
+            ArrayNode value = MAPPER.createArrayNode();
+            storageAccounts.forEach((id, account) -> {
+                if (id.startsWith(scope)) {
+                    value.add(account);
+                }
+            });
+            return json(request, 200, MAPPER.createObjectNode().set("value", value));
+        }
+        String name = segments[1];
+        String id = path.substring(0, nameStart + 1 + name.length());
+        String key = id.toLowerCase(Locale.ROOT);
+        String action = segments.length > 2 ? segments[2].toLowerCase(Locale.ROOT) : "";
+
+        if (action.equals("listkeys")) {
+            String[] accountKeys = storageAccountKeys.get(key);
+            return accountKeys == null ? notFound(request, id) : json(request, 200, keysJson(accountKeys));
+        }
+        if (action.equals("regeneratekey")) {
+            String keyName = readJson(body).path("keyName").asText();
+            String[] accountKeys = storageAccountKeys.get(key);
+            if (accountKeys == null) {
+                return notFound(request, id);
+            }
+            synchronized (accountKeys) {
+                int index = "key2".equalsIgnoreCase(keyName) ? 1 : 0;
+                accountKeys[index] = randomKey();
+                ObjectNode account = storageAccounts.get(key);
+                if (account != null) {
+                    synchronized (account) {
+                        account.with("properties").with("keyCreationTime")
+                                .put("key" + (index + 1), OffsetDateTime.now(ZoneOffset.UTC).toString());
+                    }
+                }
+                return json(request, 200, keysJson(accountKeys));
+            }
+        }
+
+        HttpMethod method = request.getHttpMethod();
+        if (method == HttpMethod.PUT) {
+            ObjectNode account = newStorageAccount(id, name, readJson(body));
+            storageAccountKeys.put(key, new String[] {randomKey(), randomKey()});
+            if (longRunningOperationPolls <= 0) {
+                storageAccounts.put(key, account);
+                return json(request, 200, account);
+            }
+            // Like the real service, the account only shows up once the operation has completed.
+            String operationId = UUID.randomUUID().toString();
+            operations.put(operationId, new Operation(key, account, longRunningOperationPolls));
+            return accepted(request, operationId);
+        }
+        ObjectNode account = storageAccounts.get(key);
+        if (account == null) {
+            return method == HttpMethod.DELETE ? empty(request, 204) : notFound(request, id);
+        }
+        if (method == HttpMethod.GET) {
+            return json(request, 200, account);
+        }
+        if (method == HttpMethod.PATCH) {
+            synchronized (account) {
+                merge(account, readJson(body));
+                return json(request, 200, account);
+            }
+        }
+        if (method == HttpMethod.DELETE) {
+            storageAccounts.remove(key);
+            storageAccountKeys.remove(key);
+            return empty(request, 200);
+        }
+        return armError(request, 405, "MethodNotAllowed", "Unsupported method " + method);
+    }
+
+    private ObjectNode newStorageAccount(String id, String name, ObjectNode definition) {
+        ObjectNode account = definition.deepCopy();
+        account.put("id", id);
+        account.put("name", name);
+        account.put("type", "Microsoft.Storage/storageAccounts");
+        if (account.has("identity")) {
+            ((ObjectNode) account.get("identity"))
+                    .put("principalId", UUID.randomUUID().toString())
+                    .put("tenantId", tenantId());
+        }
+        ObjectNode properties = account.with("properties");
+        properties.put("provisioningState", "Succeeded");
+        String creationTime = OffsetDateTime.now(ZoneOffset.UTC).toString();
+        properties.put("creationTime", creationTime);
+        properties.putObject("keyCreationTime").put("key1", creationTime).put("key2", creationTime);
+        properties.put("primaryLocation", account.path("location").asText());
+        properties.put("statusOfPrimary", "available");
+        ObjectNode endpoints = properties.putObject("primaryEndpoints");
+        for (String service : Arrays.asList("blob", "queue", "table", "file", "dfs", "web")) {
+            endpoints.put(service, "https://" + name + "." + service + ".core.windows.net/");
+        }
+        return account;
+    }
+
+    private ObjectNode keysJson(String[] accountKeys) {
+        ObjectNode result = MAPPER.createObjectNode();
+        ArrayNode keyList = result.putArray("keys");
+        for (int i = 0; i < accountKeys.length; i++) {
+            keyList.addObject()
+                    .put("keyName", "key" + (i + 1))
+                    .put("value", accountKeys[i])
+                    .put("permissions", "FULL");
+        }
+        return result;
+    }
+
+    private HttpResponse pollOperation(HttpRequest request, String operationId) {
+        Operation operation = operations.get(operationId);
+        if (operation == null) {
+            return notFound(request, OPERATIONS_PATH + operationId);
+        }
+        if (operation.remainingPolls.getAndDecrement() > 0) {
+            return accepted(request, operationId);
+        }
+        operations.remove(operationId);
+        storageAccounts.put(operation.resourceKey, operation.resource);
+        return json(request, 200, operation.resource);
+    }
+
+    private HttpResponse accepted(HttpRequest request, String operationId) {
+        URL url = request.getUrl();
+        return empty(request, 202)
+                .withHeader("Location", url.getProtocol() + "://" + url.getAuthority() + OPERATIONS_PATH + operationId)
+                .withHeader("Retry-After", "0");
+    }
+
+    private HttpResponse vault(HttpRequest request, String path, int nameStart, byte[] body) throws IOException {
+        String name = path.substring(nameStart).split("/")[0];
+        String id = path.substring(0, nameStart + name.length());
+        String key = id.toLowerCase(Locale.ROOT);
+        HttpMethod method = request.getHttpMethod();
+        if (method == HttpMethod.PUT) {
+            ObjectNode vault = readJson(body);
+            vault.put("id", id);
+            vault.put("name", name);
+            vault.put("type", "Microsoft.KeyVault/vaults");
+            vault.with("properties")
+                    .put("vaultUri", "https://" + name + ".vault.azure.net/")
+                    .put("provisioningState", "Succeeded");
+            vaults.put(key, vault);
+            return json(request, 200, vault);
+        }
+        ObjectNode vault = vaults.get(key);
+        if (vault == null) {
+            return method == HttpMethod.DELETE ? empty(request, 204) : notFound(request, id);
+        }
+        if (method == HttpMethod.GET) {
+            return json(request, 200, vault);
+        }
+        if (method == HttpMethod.PATCH) {
+            synchronized (vault) {
+                merge(vault, readJson(body));
+                return json(request, 200, vault);
+            }
+        }
+        if (method == HttpMethod.DELETE) {
+            vaults.remove(key);
+            if (vault.path("properties").path("enableSoftDelete").asBoolean()) {
+                deletedVaults.put(name.toLowerCase(Locale.ROOT), vault);
+            }
+            return empty(request, 200);
+        }
+        return armError(request, 405, "MethodNotAllowed", "Unsupported method " + method);
+    }
+
+    // Deleted vaults are addressed by location and name; the location is not checked.
+    private HttpResponse deletedVault(HttpRequest request, String path, int nameStart) {
+        String[] segments = path.substring(nameStart).split("/");
+        String key = segments[0].toLowerCase(Locale.ROOT);
+        ObjectNode vault = deletedVaults.get(key);
+        if (vault == null) {
+            return notFound(request, path);
+        }
+        HttpMethod method = request.getHttpMethod();
+        if (method == HttpMethod.GET && segments.length == 1) {
+            ObjectNode deleted = MAPPER.createObjectNode()
+                    .put("id", path)
+                    .put("name", segments[0])
+                    .put("type", "Microsoft.KeyVault/deletedVaults");
+            deleted.putObject("properties")
+                    .put("vaultId", vault.path("id").asText())
+                    .put("location", vault.path("location").asText());
+            return json(request, 200, deleted);
+        }
+        if (method == HttpMethod.POST && segments.length == 2 && segments[1].equalsIgnoreCase("purge")) {
+            if (vault.path("properties").path("enablePurgeProtection").asBoolean()) {
+                return armError(request, 409, "Conflict", "Vault " + segments[0]
+                        + " has purge protection enabled and cannot be purged before its retention period ends.");
+            }
+            deletedVaults.remove(key);
+            return empty(request, 200);
+        }
+        return armError(request, 405, "MethodNotAllowed", "Unsupported method " + method);
+    }
+
+    private HttpResponse roleDefinition(HttpRequest request, String path) {
+        String[] segments = path.split("/");
+        String last = segments[segments.length - 1];
+        if (!last.equalsIgnoreCase("roleDefinitions")) {
+            return json(request, 200, roleDefinitionJson(path, last, "Role " + last));
+        }
+        // A lookup by role name; every name resolves to a role with an id derived from it.
+        ArrayNode value = MAPPER.createArrayNode();
+        Matcher matcher = ROLE_NAME_FILTER.matcher(decode(request.getUrl().getQuery()));
+        if (matcher.find()) {
+            String roleId = UUID.nameUUIDFromBytes(matcher.group(1).getBytes(StandardCharsets.UTF_8)).toString();
+            value.add(roleDefinitionJson(path + "/" + roleId, roleId, matcher.group(1)));
+        }
+        return json(request, 200, MAPPER.createObjectNode().set("value", value));
+    }
+
+    private ObjectNode roleDefinitionJson(String id, String name, String roleName) {
+        ObjectNode definition = MAPPER.createObjectNode()
+                .put("id", id)
+                .put("name", name)
+                .put("type", "Microsoft.Authorization/roleDefinitions");
+        definition.putObject("properties")
+                .put("roleName", roleName)
+                .put("type", "BuiltInRole")
+                .put("description", roleName)
+                .putArray("assignableScopes").add("/");
+        return definition;
+    }
+
+    private HttpResponse roleAssignment(HttpRequest request, String path, String scope, byte[] body) throws IOException {
+        String key = path.toLowerCase(Locale.ROOT);
+        HttpMethod method = request.getHttpMethod();
+        if (method == HttpMethod.PUT) {
+            ObjectNode assignment = readJson(body);
+            assignment.put("id", path);
+            assignment.put("name", path.substring(path.lastIndexOf('/') + 1));
+            assignment.put("type", "Microsoft.Authorization/roleAssignments");
+            assignment.with("properties").put("scope", scope);
+            roleAssignments.put(key, assignment);
+            return json(request, 201, assignment);
+        }
+        ObjectNode assignment = method == HttpMethod.DELETE ? roleAssignments.remove(key) : roleAssignments.get(key);
+        if (assignment == null) {
+            return method == HttpMethod.DELETE ? empty(request, 204) : notFound(request, path);
+        }
+        return json(request, 200, assignment);
+    }
+
+    private HttpResponse roleAssignmentsAtScope(HttpRequest request, String scope) {
+        ArrayNode value = MAPPER.createArrayNode();
+        roleAssignments.forEach((key, assignment) -> {
+            if (assignment.path("properties").path("scope").asText().equalsIgnoreCase(scope)) {
+                value.add(assignment);
+            }
+        });
+        return json(request, 200, MAPPER.createObjectNode().set("value", value));
+    }
+
+    // Key Vault
+
+    private HttpResponse keyVault(HttpRequest request, byte[] body) throws IOException {
+        // Key Vault clients authenticate in response to a challenge.
+        if (request.getHeaders().getValue("Authorization") == null) {
+            return empty(request, 401).withHeader("WWW-Authenticate", "Bearer authorization=\"https://login.microsoftonline.com/"
+                    + tenantId() + "\", resource=\"https://vault.azure.net\"");
+        }
+        URL url = request.getUrl();
+        String[] segments = url.getPath().split("/");
+        if (segments.length < 3 || !segments[1].equals("keys")) {
+            return armError(request, 501, "NotImplemented", "The mock does not emulate " + url.getPath());
+        }
+        String vaultUrl = "https://" + url.getHost().toLowerCase(Locale.ROOT);
+        String name = segments[2];
+        String key = vaultUrl + "/keys/" + name;
+        if (request.getHttpMethod() == HttpMethod.POST && segments.length == 4 && segments[3].equals("create")) {
+            ObjectNode definition = readJson(body);
+            long now = OffsetDateTime.now().toEpochSecond();
+            byte[] modulus = new byte[definition.path("key_size").asInt(2048) / 8];
+            ThreadLocalRandom.current().nextBytes(modulus);
+            ObjectNode bundle = MAPPER.createObjectNode();
+            ObjectNode jsonWebKey = bundle.putObject("key")
+                    .put("kid", key + "/" + UUID.randomUUID().toString().replace("-", ""))
+                    .put("kty", definition.path("kty").asText("RSA"))
+                    .put("n", Base64.getUrlEncoder().withoutPadding().encodeToString(modulus))
+                    .put("e", "AQAB");
+            jsonWebKey.set("key_ops", definition.path("key_ops"));
+            bundle.putObject("attributes")
+                    .put("enabled", true)
+                    .put("created", now)
+                    .put("updated", now)
+                    .put("recoveryLevel", "Recoverable");
+            keys.put(key, bundle);
+            return json(request, 200, bundle);
+        }
+        if (request.getHttpMethod() == HttpMethod.GET) {
+            ObjectNode bundle = keys.get(key);
+            return bundle == null
+                    ? armError(request, 404, "KeyNotFound", "A key with (name/id) " + name + " was not found in this key vault.")
+                    : json(request, 200, bundle);
+        }
+        return armError(request, 501, "NotImplemented", "The mock does not emulate " + request.getHttpMethod() + " " + url.getPath());
+    }
+
+    // Blob storage
+
+    private HttpResponse blob(HttpRequest request, byte[] body) {
+        URL url = request.getUrl();
+        Map<String, String> query = parseQuery(url.getQuery());
+        String path = url.getPath();
+        int separator = path.indexOf('/', 1);
+        String containerKey = url.getHost().toLowerCase(Locale.ROOT) + (separator < 0 ? path : path.substring(0, separator));
+        HttpMethod method = request.getHttpMethod();
+
+        if ("container".equals(query.get("restype"))) {
+            if (query.containsKey("comp")) {
+                return blobError(request, 501, "NotImplemented", "The mock does not emulate comp=" + query.get("comp"));
+            }
+            if (method == HttpMethod.PUT) {
+                return containers.putIfAbsent(containerKey, newEtag()) == null
+                        ? blobResponse(request, 201, containers.get(containerKey))
+                        : blobError(request, 409, "ContainerAlreadyExists", "The specified container already exists.");
+            }
+            String etag = method == HttpMethod.DELETE ? containers.remove(containerKey) : containers.get(containerKey);
+            return etag == null
+                    ? blobError(request, 404, "ContainerNotFound", "The specified container does not exist.")
+                    : blobResponse(request, method == HttpMethod.DELETE ? 202 : 200, etag);
+        }
+
+        if (!containers.containsKey(containerKey)) {
+            return blobError(request, 404, "ContainerNotFound", "The specified container does not exist.");
+        }
+        String blobKey = url.getHost().toLowerCase(Locale.ROOT) + path;
+        String comp = query.get("comp");
+        if (method == HttpMethod.PUT && "block".equals(comp)) {
+            uncommittedBlocks.put(blobKey + "#" + query.get("blockid"), body);
+            return blobResponse(request, 201, null);
+        }
+        if (method == HttpMethod.PUT && "blocklist".equals(comp)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            Matcher matcher = BLOCK_LIST_ENTRY.matcher(new String(body, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                byte[] block = uncommittedBlocks.remove(blobKey + "#" + matcher.group(1));
+                if (block == null) {
+                    return blobError(request, 400, "InvalidBlockList", "The specified block list is invalid.");
+                }
+                content.write(block, 0, block.length);
+            }
+            Blob blob = new Blob(content.toByteArray());
+            blobs.put(blobKey, blob);
+            return blobResponse(request, 201, blob.etag);
+        }
+        if (comp != null) {
+            return blobError(request, 501, "NotImplemented", "The mock does not emulate comp=" + comp);
+        }
+        if (method == HttpMethod.PUT) {
+            Blob blob = new Blob(body);
+            blobs.put(blobKey, blob);
+            return blobResponse(request, 201, blob.etag);
+        }
+        Blob blob = method == HttpMethod.DELETE ? blobs.remove(blobKey) : blobs.get(blobKey);
+        if (blob == null) {
+            return blobError(request, 404, "BlobNotFound", "The specified blob does not exist.");
+        }
+        if (method == HttpMethod.DELETE) {
+            return blobResponse(request, 202, null);
+        }
+        if (method == HttpMethod.HEAD) {
+            return blobProperties(blobResponse(request, 200, blob.etag), blob)
+                    .withHeader("Content-Length", String.valueOf(blob.content.length));
+        }
+        if (method == HttpMethod.GET) {
+            String range = request.getHeaders().getValue("x-ms-range");
+            if (range == null) {
+                range = request.getHeaders().getValue("Range");
+            }
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher == null || !matcher.matches()) {
+                return blobProperties(blobResponse(request, 200, blob.etag), blob).withBody(blob.content);
+            }
+            int start = Integer.parseInt(matcher.group(1));
+            int end = matcher.group(2).isEmpty()
+                    ? blob.content.length - 1
+                    : Math.min(Integer.parseInt(matcher.group(2)), blob.content.length - 1);
+            if (start >= blob.content.length && blob.content.length > 0) {
+                return blobError(request, 416, "InvalidRange", "The range specified is invalid for the current size of the resource.");
+            }
+            return blobProperties(blobResponse(request, 206, blob.etag), blob)
+                    .withHeader("Content-Range", "bytes " + start + "-" + end + "/" + blob.content.length)
+                    .withBody(Arrays.copyOfRange(blob.content, start, Math.max(start, end + 1)));
+        }
+        return blobError(request, 405, "UnsupportedHttpVerb", "The resource doesn't support the specified HTTP verb.");
+    }
+
+    private MockHttpResponse blobResponse(HttpRequest request, int statusCode, String etag) {
+        MockHttpResponse response = empty(request, statusCode)
+                .withHeader("x-ms-version", request.getHeaders().getValue("x-ms-version"))
+                .withHeader("Date", new DateTimeRfc1123(OffsetDateTime.now(ZoneOffset.UTC)).toString());
+        if (etag != null) {
+            response.withHeader("ETag", etag)
+                    .withHeader("Last-Modified", new DateTimeRfc1123(OffsetDateTime.now(ZoneOffset.UTC)).toString());
+        }
+        if (statusCode == 201) {
+            response.withHeader("x-ms-request-server-encrypted", "true");
+        }
+        return response;
+    }
+
+    private static MockHttpResponse blobProperties(MockHttpResponse response, Blob blob) {
+        return response
+                .withHeader("Last-Modified", blob.lastModified)
+                .withHeader("x-ms-creation-time", blob.lastModified)
+                .withHeader("x-ms-blob-type", "BlockBlob")
+                .withHeader("Content-Type", "application/octet-stream")
+                .withHeader("Accept-Ranges", "bytes");
+    }
+
+    // Responses
+
+    private MockHttpResponse json(HttpRequest request, int statusCode, JsonNode body) {
+        try {
+            return empty(request, statusCode)
+                    .withHeader("Content-Type", "application/json; charset=utf-8")
+                    .withBody(MAPPER.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MockHttpResponse empty(HttpRequest request, int statusCode) {
+        return new MockHttpResponse(request, statusCode)
+                .withHeader("x-ms-request-id", UUID.randomUUID().toString());
+    }
+
+    private MockHttpResponse notFound(HttpRequest request, String id) {
+        return armError(request, 404, "ResourceNotFound", "The resource '" + id + "' was not found.");
+    }
+
+    private MockHttpResponse armError(HttpRequest request, int statusCode, String code, String message) {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.putObject("error").put("code", code).put("message", message);
+        return json(request, statusCode, body);
+    }
+
+    private MockHttpResponse blobError(HttpRequest request, int statusCode, String code, String message) {
+        String body = "<?xml version=\"1.0\" encoding=\"utf-8\"?><Error><Code>" + code + "</Code><Message>"
+                + message + "</Message></Error>";
+        return empty(request, statusCode)
+                .withHeader("x-ms-error-code", code)
+                .withHeader("Content-Type", "application/xml")
+                .withBody(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Helpers
+
+    private static ObjectNode readJson(byte[] body) throws IOException {
+        JsonNode node = body.length == 0 ? null : MAPPER.readTree(body);
+        return node instanceof ObjectNode ? (ObjectNode) node : MAPPER.createObjectNode();
+    }
+
+    // Applies a PATCH body the way ARM does: objects are merged, everything else is replaced.
+    private static void merge(ObjectNode target, ObjectNode patch) {
+        patch.fields().forEachRemaining(field -> {
+            JsonNode existing = target.get(field.getKey());
+            if (existing instanceof ObjectNode && field.getValue() instanceof ObjectNode) {
+                merge((ObjectNode) existing, (ObjectNode) field.getValue());
+            } else {
+                target.set(field.getKey(), field.getValue());
+            }
+        });
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return value == null ? "" : URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String randomKey() {
+        byte[] key = new byte[64];
+        ThreadLocalRandom.current().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static String newEtag() {
+        return "\"0x" + Long.toHexString(System.nanoTime()).toUpperCase(Locale.ROOT) + "\"";
+    }
+
+    private static String tenantId() {
+        return AccessTokenUtils.AZURE_TENANT_ID == null ? "00000000-0000-0000-0000-000000000000" : AccessTokenUtils.AZURE_TENANT_ID;
+    }
+
+    /**
+     * A storage account creation that completes after a number of polls.
+     */
+    private static final class Operation {
+        private final String resourceKey;
+        private final ObjectNode resource;
+        private final AtomicInteger remainingPolls;
+
+        Operation(String resourceKey, ObjectNode resource, int polls) {
+            this.resourceKey = resourceKey;
+            this.resource = resource;
+            this.remainingPolls = new AtomicInteger(polls - 1);
+        }
+    }
+
+    private static final class Blob {
+        private final byte[] content;
+        private final String etag = newEtag();
+        private final String lastModified = new DateTimeRfc1123(OffsetDateTime.now(ZoneOffset.UTC)).toString();
+
+        Blob(byte[] content) {
+            this.content = content;
+        }
+    }
+
+    private static final class MockHttpResponse extends HttpResponse {
+        private final int statusCode;
+        private final HttpHeaders headers = new HttpHeaders();
+        private byte[] body = new byte[0];
+
+        MockHttpResponse(HttpRequest request, int statusCode) {
+            super(request);
+            this.statusCode = statusCode;
+        }
+
+        MockHttpResponse withHeader(String name, String value) {
+            if (value != null) {
+                headers.set(name, value);
+            }
+            return this;
+        }
+
+        MockHttpResponse withBody(byte[] body) {
+            this.body = body;
+            return withHeader("Content-Length", String.valueOf(body.length));
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeaderValue(String name) {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return body.length == 0 ? Flux.empty() : Flux.defer(() -> Flux.just(ByteBuffer.wrap(body)));
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return body.length == 0 ? Mono.empty() : Mono.just(body);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString() {
+            return getBodyAsString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset) {
+            return getBodyAsByteArray().map(bytes -> new String(bytes, charset));
+        }
+    }
+}
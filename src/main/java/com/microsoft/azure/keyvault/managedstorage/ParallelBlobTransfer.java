@@ -0,0 +1,178 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.specialized.BlobAsyncClientBase;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Moves files to and from block blobs in parallel without holding them in heap.
+ *
+ * Uploads read each block of the file into a buffer and stage the blocks concurrently before committing the block
+ * list; the buffers are pooled and reused by later blocks, so an upload holds one per concurrent request. Downloads
+ * fetch ranges concurrently and write every buffer to its position in the file as it arrives. Either way at most one
+ * block per concurrent request is in flight, whatever the size of the file. File reads and writes block, so they run
+ * on bounded elastic threads rather than the HTTP client's event loops. The clients may be authorized by a SAS token
+ * or a shared key.
+ */
+public class ParallelBlobTransfer {
+
+    private static final int WRITE_PREFETCH = 16;
+
+    private long blockSize = 8 * 1024 * 1024;
+    private int concurrency = 8;
+
+    /**
+     * Sets the size of the staged blocks and downloaded ranges. Larger blocks are used if the file would otherwise
+     * need more blocks than a blob can have.
+     */
+    public ParallelBlobTransfer withBlockSize(long blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of blocks or ranges transferred at the same time.
+     */
+    public ParallelBlobTransfer withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Uploads the file to the blob, replacing its content.
+     */
+    public Mono<Void> upload(BlockBlobAsyncClient blob, Path source) {
+        return Mono.using(() -> FileChannel.open(source, StandardOpenOption.READ),
+                channel -> Mono.fromCallable(channel::size).flatMap(size -> upload(blob, channel, size)),
+                ParallelBlobTransfer::close);
+    }
+
+    private Mono<Void> upload(BlockBlobAsyncClient blob, FileChannel channel, long size) {
+        long blockLength = blockLength(size);
+        if (size <= Math.min(blockLength, BlockBlobAsyncClient.MAX_UPLOAD_BLOB_BYTES_LONG)) {
+            return read(channel, 0, ByteBuffer.allocate((int) size))
+                    .flatMap(content -> blob.upload(replayable(content), size, true))
+                    .then();
+        }
+
+        int blockCount = (int) ((size + blockLength - 1) / blockLength);
+        List<String> blockIds = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            // Every block id of a blob must have the same length.
+            blockIds.add(Base64.getEncoder().encodeToString(String.format("%08d", i).getBytes(StandardCharsets.UTF_8)));
+        }
+        // A buffer goes back to the pool once its block is staged, so no more than the concurrency are allocated.
+        Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        return Flux.range(0, blockCount)
+                .flatMap(i -> {
+                    long offset = i * blockLength;
+                    long length = Math.min(blockLength, size - offset);
+                    ByteBuffer pooled = buffers.poll();
+                    ByteBuffer buffer = pooled != null ? pooled : ByteBuffer.allocate((int) blockLength);
+                    // Through Buffer, so that the class also runs on Java 8, where ByteBuffer doesn't override these.
+                    ((Buffer) buffer).clear();
+                    ((Buffer) buffer).limit((int) length);
+                    return read(channel, offset, buffer)
+                            .flatMap(content -> blob.stageBlock(blockIds.get(i), replayable(content), length))
+                            .doFinally(ignored -> buffers.offer(buffer));
+                }, concurrency)
+                .then(blob.commitBlockList(blockIds, true))
+                .then();
+    }
+
+    /**
+     * Downloads the blob into the file, replacing its content. The download fails if the blob changes meanwhile.
+     */
+    public Mono<Void> download(BlobAsyncClientBase blob, Path destination) {
+        return blob.getProperties().flatMap(properties -> Mono.using(
+                () -> FileChannel.open(destination,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                channel -> download(blob, channel, properties.getBlobSize(),
+                        new BlobRequestConditions().setIfMatch(properties.getETag())),
+                ParallelBlobTransfer::close));
+    }
+
+    private Mono<Void> download(BlobAsyncClientBase blob, FileChannel channel, long size, BlobRequestConditions conditions) {
+        long rangeLength = blockLength(size);
+        int rangeCount = (int) ((size + rangeLength - 1) / rangeLength);
+        return Flux.range(0, rangeCount)
+                .flatMap(i -> {
+                    long offset = i * rangeLength;
+                    BlobRange range = new BlobRange(offset, Math.min(rangeLength, size - offset));
+                    return blob.downloadWithResponse(range, null, conditions, false)
+                            .flatMap(response -> write(channel, response.getValue(), offset));
+                }, concurrency)
+                .then();
+    }
+
+    // Writes each buffer on a bounded elastic thread, with only a few buffers of the range queued ahead of the writes
+    // so that a slow disk holds back the download instead of filling the heap. The HTTP client copies every buffer
+    // out of its pool, so the buffers stay valid after the hand-off.
+    private static Mono<Void> write(FileChannel channel, Flux<ByteBuffer> content, long offset) {
+        long[] position = {offset};
+        return content.publishOn(Schedulers.boundedElastic(), WRITE_PREFETCH).doOnNext(buffer -> {
+            try {
+                while (buffer.hasRemaining()) {
+                    position[0] += channel.write(buffer, position[0]);
+                }
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }).then();
+    }
+
+    private long blockLength(long size) {
+        long minimum = (size + BlockBlobAsyncClient.MAX_BLOCKS - 1) / BlockBlobAsyncClient.MAX_BLOCKS;
+        // A block buffer can't be larger than 2 GiB.
+        long maximum = Math.min(BlockBlobAsyncClient.MAX_STAGE_BLOCK_BYTES_LONG, Integer.MAX_VALUE);
+        return Math.min(Math.max(blockSize, minimum), maximum);
+    }
+
+    // Fills the buffer up to its limit from the offset in the file, and flips it for reading.
+    private static Mono<ByteBuffer> read(FileChannel channel, long offset, ByteBuffer buffer) {
+        return Mono.fromCallable(() -> {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("The file ended at " + position + " while reading the block at " + offset);
+                }
+                position += read;
+            }
+            ((Buffer) buffer).flip();
+            return buffer;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Retries resend the request body, so every subscription gets its own view of the block.
+    private static Flux<ByteBuffer> replayable(ByteBuffer content) {
+        return Flux.defer(() -> Flux.just(content.duplicate()));
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves SampleMetrics in the Prometheus text format at http://localhost:{port}/metrics.
+ *
+ * Counters are exported as counters and histograms as summaries in seconds with the 0.5, 0.9 and 0.99 quantiles.
+ * Metric names get an "azure_samples_" prefix, with every character that Prometheus doesn't allow replaced by an
+ * underscore.
+ */
+public final class PrometheusMetricsExporter implements MetricsExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final SampleMetrics metrics;
+    private final HttpServer server;
+
+    private PrometheusMetricsExporter(SampleMetrics metrics, HttpServer server) {
+        this.metrics = metrics;
+        this.server = server;
+    }
+
+    /**
+     * Starts serving the metrics on the port, or on any free port if it is 0.
+     */
+    public static PrometheusMetricsExporter start(SampleMetrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        PrometheusMetricsExporter exporter = new PrometheusMetricsExporter(metrics, server);
+        server.createContext("/metrics", exporter::handle);
+        server.start();
+        System.out.println("Serving metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+        return exporter;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Returns the current metrics in the Prometheus text format.
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        metrics.counters().forEach((name, value) -> {
+            String metric = metricName(name) + "_total";
+            text.append("# TYPE ").append(metric).append(" counter\n");
+            text.append(metric).append(' ').append(value).append('\n');
+        });
+        metrics.histograms().forEach((name, histogram) -> {
+            String metric = metricName(name) + "_seconds";
+            text.append("# TYPE ").append(metric).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                text.append(metric).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.valueAtPercentile(quantile * 100))).append('\n');
+            }
+            text.append(metric).append("_sum ").append(seconds(histogram.sum())).append('\n');
+            text.append(metric).append("_count ").append(histogram.count()).append('\n');
+        });
+        return text.toString();
+    }
+
+    private static String metricName(String name) {
+        return "azure_samples_" + name.replaceAll("[^a-zA-Z0-9_]", "_").toLowerCase(Locale.ROOT);
+    }
+
+    private static double seconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,229 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A local, append-only record of the fields known about each storage account, such as the desired vault name or
+ * the id of a resource once it has been created.
+ *
+ * Every record is one line "account TAB field TAB value" appended to state.log and written to the file before
+ * record() returns, so a record survives the process dying right after it. The state is rebuilt on open by
+ * reading state.snapshot and replaying state.log over it; a last line cut short by a crash is dropped. Every
+ * snapshot interval records the whole state is written to a new snapshot, which replaces the old one atomically,
+ * and the log is emptied.
+ */
+public class ReconciliationLog implements Closeable {
+
+    private static final String LOG_FILE = "state.log";
+    private static final String SNAPSHOT_FILE = "state.snapshot";
+    // A record with this field removes the field named by its value, or everything known about the account if the
+    // value is empty.
+    private static final String FORGET = "-";
+
+    private final Path directory;
+    private final Map<String, Map<String, String>> state = new LinkedHashMap<>();
+    private FileChannel log;
+    private int snapshotInterval = 1000;
+    private int recordsSinceSnapshot;
+
+    private ReconciliationLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the state kept in the directory, creating the directory if needed.
+     */
+    public static ReconciliationLog open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ReconciliationLog reconciliationLog = new ReconciliationLog(directory);
+        reconciliationLog.load();
+        return reconciliationLog;
+    }
+
+    /**
+     * Sets how many records are appended to the log before the state is snapshotted and the log emptied.
+     */
+    public ReconciliationLog withSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    /**
+     * Records a field of the account, replacing an earlier value. Nothing is written if the value is unchanged.
+     */
+    public synchronized void record(String account, String field, String value) throws IOException {
+        checkToken("account", account);
+        checkToken("field", field);
+        checkToken("value", value);
+        if (value.equals(stateOf(account).get(field))) {
+            return;
+        }
+        append(account, field, value);
+        apply(account, field, value);
+        snapshotIfDue();
+    }
+
+    /**
+     * Removes everything recorded about the account, e.g. after it has been deleted.
+     */
+    public synchronized void forget(String account) throws IOException {
+        if (state.containsKey(account)) {
+            append(account, FORGET, "");
+            state.remove(account);
+            snapshotIfDue();
+        }
+    }
+
+    /**
+     * Removes one field of the account, e.g. the id of a resource that has been deleted.
+     */
+    public synchronized void forget(String account, String field) throws IOException {
+        checkToken("field", field);
+        if (field.isEmpty()) {
+            throw new IllegalArgumentException("The field to forget must be named");
+        }
+        if (stateOf(account).containsKey(field)) {
+            append(account, FORGET, field);
+            apply(account, FORGET, field);
+            snapshotIfDue();
+        }
+    }
+
+    /**
+     * Returns the fields recorded for the account, or an empty map.
+     */
+    public synchronized Map<String, String> stateOf(String account) {
+        Map<String, String> fields = state.get(account);
+        return fields == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(fields));
+    }
+
+    /**
+     * Returns the accounts with recorded fields, sorted by name.
+     */
+    public synchronized Set<String> accounts() {
+        return new TreeSet<>(state.keySet());
+    }
+
+    /**
+     * Writes the whole state to a new snapshot and empties the log.
+     */
+    public synchronized void snapshot() throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Map<String, String>> account : state.entrySet()) {
+                for (Map.Entry<String, String> field : account.getValue().entrySet()) {
+                    writer.write(line(account.getKey(), field.getKey(), field.getValue()));
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Replaying the old log over the new snapshot gives the same state, so a crash before this is harmless.
+        log.truncate(0);
+        recordsSinceSnapshot = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (recordsSinceSnapshot > 0) {
+            snapshot();
+        }
+        log.close();
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(SNAPSHOT_FILE), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                replay(line);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been snapshotted yet.
+        }
+
+        log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        byte[] bytes = Files.readAllBytes(directory.resolve(LOG_FILE));
+        int start = 0;
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] == '\n') {
+                replay(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+                start = end + 1;
+                recordsSinceSnapshot++;
+            }
+        }
+        // Drops a record that was only partly written, so the next one starts on a line of its own.
+        log.truncate(start);
+        log.position(start);
+    }
+
+    private void replay(String line) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length == 3) {
+            apply(parts[0], parts[1], parts[2]);
+        }
+    }
+
+    private void apply(String account, String field, String value) {
+        if (FORGET.equals(field) && value.isEmpty()) {
+            state.remove(account);
+        } else if (FORGET.equals(field)) {
+            Map<String, String> fields = state.get(account);
+            if (fields != null) {
+                fields.remove(value);
+                if (fields.isEmpty()) {
+                    state.remove(account);
+                }
+            }
+        } else {
+            state.computeIfAbsent(account, ignored -> new LinkedHashMap<>()).put(field, value);
+        }
+    }
+
+    private void append(String account, String field, String value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line(account, field, value).getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        recordsSinceSnapshot++;
+    }
+
+    private void snapshotIfDue() throws IOException {
+        if (recordsSinceSnapshot >= snapshotInterval) {
+            snapshot();
+        }
+    }
+
+    private static String line(String account, String field, String value) {
+        return account + "\t" + field + "\t" + value + "\n";
+    }
+
+    private static void checkToken(String name, String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("The " + name + " to record can't be null");
+        }
+        if (token.indexOf('\t') >= 0 || token.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Tabs and line breaks can't be recorded: " + token);
+        }
+    }
+}
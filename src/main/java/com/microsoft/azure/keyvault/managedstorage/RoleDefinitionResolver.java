@@ -0,0 +1,69 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.authorization.models.RoleDefinition;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves role definition ids by role name and caches them for the lifetime of the process.
+ *
+ * Built-in roles are fetched directly by their well-known id; other roles are looked up with a server-side role
+ * name filter instead of listing every definition. Each cached id expires after the configured time to live, and
+ * concurrent lookups of the same role share one request.
+ */
+public class RoleDefinitionResolver {
+
+    public static final String STORAGE_ACCOUNT_KEY_OPERATOR_SERVICE_ROLE = "Storage Account Key Operator Service Role";
+
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    // Built-in role definitions have the same name (a GUID) in every tenant.
+    private static final Map<String, String> WELL_KNOWN_ROLE_IDS;
+
+    static {
+        Map<String, String> roles = new HashMap<>();
+        roles.put(STORAGE_ACCOUNT_KEY_OPERATOR_SERVICE_ROLE, "81a9662b-bebf-436f-a333-f67b29880f12");
+        WELL_KNOWN_ROLE_IDS = Collections.unmodifiableMap(roles);
+    }
+
+    private final AzureManagers azureManagers;
+    private final Duration timeToLive;
+    private final ConcurrentHashMap<String, Mono<String>> roleDefinitionIds = new ConcurrentHashMap<>();
+
+    public RoleDefinitionResolver(AzureManagers azureManagers) {
+        this(azureManagers, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public RoleDefinitionResolver(AzureManagers azureManagers, Duration timeToLive) {
+        this.azureManagers = azureManagers;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the id of the role definition with the given name, or an empty Mono if there is no such role.
+     */
+    public Mono<String> resolveIdAsync(String roleName) {
+        return roleDefinitionIds.computeIfAbsent(roleName, name -> Mono.defer(() -> lookup(name))
+                .map(RoleDefinition::id)
+                // Only successful lookups are kept; failures and unknown roles are retried on the next call.
+                .cache(id -> timeToLive, error -> Duration.ZERO, () -> Duration.ZERO));
+    }
+
+    public String resolveId(String roleName) {
+        return resolveIdAsync(roleName).block();
+    }
+
+    private Mono<RoleDefinition> lookup(String roleName) {
+        String scope = "/subscriptions/" + AccessTokenUtils.AZURE_SUBSCRIPTION_ID;
+        String wellKnownId = WELL_KNOWN_ROLE_IDS.get(roleName);
+        if (wellKnownId != null) {
+            return azureManagers.authorization().roleDefinitions().getByScopeAsync(scope, wellKnownId);
+        }
+        return azureManagers.authorization().roleDefinitions().getByScopeAndRoleNameAsync(scope, roleName);
+    }
+}
@@ -0,0 +1,108 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Latency histograms and counters for the sample workflows, shared by the whole process.
+ *
+ * Metrics are created on first use and named by dot separated paths, e.g. "provision.vault.create" or
+ * "http.arm.retries". Hot paths look their metrics up once and keep the reference. A MetricsExporter publishes
+ * them over JMX or as Prometheus text, and print() writes a summary table.
+ */
+public class SampleMetrics {
+
+    private static final SampleMetrics SHARED = new SampleMetrics();
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public static SampleMetrics shared() {
+        return SHARED;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    public void record(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    /**
+     * Returns a transformer that records how long each subscription to a Mono takes to complete or fail, and counts
+     * failures in "name.errors". Cancelled subscriptions are not recorded.
+     */
+    public <T> Function<Mono<T>, Mono<T>> timed(String name) {
+        LatencyHistogram histogram = histogram(name);
+        LongAdder errors = counter(name + ".errors");
+        return mono -> Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> {
+                if (signal != SignalType.CANCEL) {
+                    histogram.record(System.nanoTime() - start);
+                }
+                if (signal == SignalType.ON_ERROR) {
+                    errors.increment();
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns the histograms sorted by name.
+     */
+    public SortedMap<String, LatencyHistogram> histograms() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+    }
+
+    /**
+     * Returns the current counter values sorted by name.
+     */
+    public SortedMap<String, Long> counters() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * Writes a table of every histogram, in milliseconds, followed by the counters.
+     */
+    public void print(PrintStream out) {
+        out.printf("%-40s %8s %10s %10s %10s %10s %10s%n", "latency (ms)", "count", "mean", "p50", "p90", "p99", "max");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            out.printf("%-40s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram.count(),
+                    millis(histogram.mean()), millis(histogram.valueAtPercentile(50)),
+                    millis(histogram.valueAtPercentile(90)), millis(histogram.valueAtPercentile(99)),
+                    millis(histogram.max()));
+        }
+        for (Map.Entry<String, Long> entry : counters().entrySet()) {
+            out.printf("%-40s %8d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
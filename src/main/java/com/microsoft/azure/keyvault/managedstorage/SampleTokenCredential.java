@@ -0,0 +1,212 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.azure.identity.implementation.util.ScopeUtil;
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wrapper class that supplies and caches the token for Azure authentication.
+ *
+ * Tokens are cached per resource and refreshed in the background with the refresh token shortly before they
+ * expire. Concurrent requests for a resource that has no valid token share a single acquisition.
+ */
+public class SampleTokenCredential implements TokenCredential {
+    // How long before the real expiry a cached token is refreshed in the background.
+    private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+
+    private static final ScheduledExecutorService REFRESH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sample-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final LongAdder CACHE_HITS = SampleMetrics.shared().counter("token.cache.hits");
+    private static final LongAdder CACHE_MISSES = SampleMetrics.shared().counter("token.cache.misses");
+    private static final LatencyHistogram DEVICE_CODE_LATENCY = SampleMetrics.shared().histogram("token.acquire.deviceCode");
+    private static final LatencyHistogram REFRESH_TOKEN_LATENCY = SampleMetrics.shared().histogram("token.acquire.refreshToken");
+
+    private final Authenticator authenticator;
+    private final ConcurrentHashMap<String, CachedToken> tokens = new ConcurrentHashMap<>();
+
+    public SampleTokenCredential(String tenantId, String authClientId) {
+        String authorization = "https://login.windows.net/" + tenantId;
+        this.authenticator = new Authenticator() {
+            @Override
+            public AuthenticationResult acquireToken(String resource) throws Exception {
+                return AccessTokenUtils.acquireToken(authorization, resource, authClientId);
+            }
+
+            @Override
+            public AuthenticationResult acquireTokenByRefreshToken(String refreshToken, String resource) throws Exception {
+                return AccessTokenUtils.acquireTokenByRefreshToken(authorization, refreshToken, resource, authClientId);
+            }
+        };
+    }
+
+    // Used by the benchmarks to run without signing in.
+    SampleTokenCredential(Authenticator authenticator) {
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext resource) {
+        String resourceId = ScopeUtil.scopesToResource(resource.getScopes());
+        return tokens.computeIfAbsent(resourceId, CachedToken::new).get();
+    }
+
+    /**
+     * Acquires tokens for a resource, interactively or with a refresh token.
+     */
+    interface Authenticator {
+        AuthenticationResult acquireToken(String resource) throws Exception;
+
+        AuthenticationResult acquireTokenByRefreshToken(String refreshToken, String resource) throws Exception;
+    }
+
+    /**
+     * The token state for a single resource. Reads are a volatile load; only a miss or an expired token
+     * goes through the pending acquisition, which every concurrent caller shares.
+     */
+    private final class CachedToken {
+        private final String resource;
+        private final AtomicReference<CompletableFuture<AccessToken>> pending = new AtomicReference<>();
+        private volatile AccessToken accessToken;
+        private volatile String refreshToken;
+
+        CachedToken(String resource) {
+            this.resource = resource;
+        }
+
+        Mono<AccessToken> get() {
+            AccessToken current = accessToken;
+            if (current != null && !current.isExpired()) {
+                CACHE_HITS.increment();
+                return Mono.just(current);
+            }
+            CACHE_MISSES.increment();
+            // Deferred, so that a Mono which is assembled but never subscribed doesn't prompt for a sign in.
+            return Mono.defer(() -> Mono.fromFuture(acquire(true)));
+        }
+
+        // Returns the in-flight acquisition, starting one if there is none. Acquiring blocks on the device code
+        // prompt or the token endpoint, so it runs on a bounded elastic thread instead of the caller's, which in the
+        // async flows is an event loop. The device code flow is only used when interactive is set; background
+        // refreshes rely on the refresh token.
+        private CompletableFuture<AccessToken> acquire(boolean interactive) {
+            CompletableFuture<AccessToken> mine = new CompletableFuture<>();
+            while (true) {
+                CompletableFuture<AccessToken> inFlight = pending.get();
+                if (inFlight != null) {
+                    return inFlight;
+                }
+                if (pending.compareAndSet(null, mine)) {
+                    break;
+                }
+            }
+
+            try {
+                Schedulers.boundedElastic().schedule(() -> complete(mine, interactive));
+            } catch (RejectedExecutionException e) {
+                pending.set(null);
+                mine.completeExceptionally(e);
+            }
+            return mine;
+        }
+
+        // Completes the acquisition whatever is thrown, even an Error, so that callers waiting on it never hang.
+        private void complete(CompletableFuture<AccessToken> mine, boolean interactive) {
+            AccessToken token = null;
+            Throwable error = null;
+            try {
+                AccessToken current = accessToken;
+                // Another caller may have refreshed the token between our read and winning the race.
+                token = interactive && current != null && !current.isExpired() ? current : store(authenticate(interactive));
+            } catch (Throwable e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                error = e;
+            }
+            // Cleared before completing, so that a caller which is woken up by the completion and needs another token
+            // starts a new acquisition instead of being handed this one again.
+            pending.set(null);
+            if (error == null) {
+                mine.complete(token);
+            } else {
+                mine.completeExceptionally(error);
+            }
+        }
+
+        private AuthenticationResult authenticate(boolean interactive) throws Exception {
+            String currentRefreshToken = refreshToken;
+            if (currentRefreshToken != null) {
+                long start = System.nanoTime();
+                try {
+                    AuthenticationResult result = authenticator.acquireTokenByRefreshToken(currentRefreshToken, resource);
+                    REFRESH_TOKEN_LATENCY.record(System.nanoTime() - start);
+                    return result;
+                } catch (Exception e) {
+                    if (!interactive) {
+                        throw e;
+                    }
+                    // The refresh token was revoked or expired, fall back to the device code flow.
+                    System.out.println("Refreshing the token for " + resource + " failed, signing in again");
+                }
+            }
+            if (!interactive) {
+                throw new IllegalStateException("No refresh token available for " + resource);
+            }
+            // Includes the time the user takes to sign in.
+            long start = System.nanoTime();
+            AuthenticationResult result = authenticator.acquireToken(resource);
+            DEVICE_CODE_LATENCY.record(System.nanoTime() - start);
+            return result;
+        }
+
+        private AccessToken store(AuthenticationResult result) {
+            AccessToken token = new AccessToken(result.getAccessToken(),
+                    OffsetDateTime.ofInstant(result.getExpiresOnDate().toInstant(), ZoneOffset.UTC));
+            if (result.getRefreshToken() != null) {
+                refreshToken = result.getRefreshToken();
+            }
+            accessToken = token;
+            scheduleRefresh(token);
+            return token;
+        }
+
+        private void scheduleRefresh(AccessToken token) {
+            long delayMillis = Duration.between(OffsetDateTime.now(), token.getExpiresAt()).minus(REFRESH_MARGIN).toMillis();
+            if (delayMillis <= 0) {
+                // Issued with less than the margin left, so a refresh would only bring another such token and
+                // refresh again right away. The next caller after it expires acquires a new one instead.
+                return;
+            }
+            REFRESH_SCHEDULER.schedule(() -> {
+                // Skip stale schedules; a foreground acquisition may already have replaced the token.
+                if (accessToken == token) {
+                    acquire(false).whenComplete((refreshed, error) -> {
+                        if (error != null) {
+                            System.out.println("Background token refresh for " + resource + " failed: " + error.getMessage());
+                        }
+                    });
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
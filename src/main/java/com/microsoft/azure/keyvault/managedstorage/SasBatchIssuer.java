@@ -0,0 +1,134 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.common.Utility;
+import com.azure.storage.common.sas.SasProtocol;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Issues pre-signed URLs for many blobs of one storage account in a single call.
+ *
+ * The account key, the canonicalized resource prefix and the query string prefix are prepared once, when the
+ * issuer is created, instead of once per blob as with BlobClient.generateSas. Batches of at least the parallel
+ * threshold are signed on all cores of the common fork-join pool, and the URLs keep the order of the requests.
+ */
+public class SasBatchIssuer {
+
+    private static final int CHUNK_SIZE = 64;
+    private static final LatencyHistogram BATCH_LATENCY = SampleMetrics.shared().histogram("sas.batch");
+
+    private final SasSigner.BlobSasTemplate template;
+    private final String endpoint;
+    private int parallelThreshold = 256;
+
+    /**
+     * @param signer the signer for the account, e.g. from SasTokenCache.signer
+     * @param blobEndpoint the blob endpoint of the account
+     * @param protocol the protocol every URL is restricted to, or null
+     */
+    public SasBatchIssuer(SasSigner signer, String blobEndpoint, SasProtocol protocol) {
+        this.template = signer.blobSas(protocol);
+        this.endpoint = blobEndpoint.endsWith("/") ? blobEndpoint : blobEndpoint + "/";
+    }
+
+    /**
+     * Sets the batch size from which URLs are signed in parallel. Smaller batches are signed on the calling thread.
+     */
+    public SasBatchIssuer withParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the signed URLs, in the order of the requests.
+     */
+    public List<String> issue(List<BlobSasRequest> requests) {
+        long start = System.nanoTime();
+        IntStream indexes = IntStream.range(0, requests.size());
+        if (requests.size() >= parallelThreshold) {
+            indexes = indexes.parallel();
+        }
+        List<String> urls = indexes
+                .mapToObj(i -> appendUrl(requests.get(i), new StringBuilder(256)).toString())
+                .collect(Collectors.toList());
+        BATCH_LATENCY.record(System.nanoTime() - start);
+        return urls;
+    }
+
+    /**
+     * Writes the signed URLs to the buffer or stream, one per line and in the order of the requests. Smaller
+     * batches are signed straight into a StringBuilder; larger ones are signed in chunks that are appended in order.
+     */
+    public void writeTo(List<BlobSasRequest> requests, Appendable out) throws IOException {
+        long start = System.nanoTime();
+        if (requests.size() < parallelThreshold) {
+            StringBuilder buffer = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder(256);
+            for (BlobSasRequest request : requests) {
+                appendUrl(request, buffer).append('\n');
+                if (buffer != out) {
+                    out.append(buffer);
+                    buffer.setLength(0);
+                }
+            }
+        } else {
+            int chunkCount = (requests.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            try {
+                IntStream.range(0, chunkCount).parallel()
+                        .mapToObj(chunk -> signChunk(requests, chunk * CHUNK_SIZE,
+                                Math.min(requests.size(), (chunk + 1) * CHUNK_SIZE)))
+                        .forEachOrdered(chunk -> append(out, chunk));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        BATCH_LATENCY.record(System.nanoTime() - start);
+    }
+
+    private StringBuilder signChunk(List<BlobSasRequest> requests, int from, int to) {
+        StringBuilder chunk = new StringBuilder((to - from) * 256);
+        for (int i = from; i < to; i++) {
+            appendUrl(requests.get(i), chunk).append('\n');
+        }
+        return chunk;
+    }
+
+    private StringBuilder appendUrl(BlobSasRequest request, StringBuilder out) {
+        out.append(endpoint).append(request.encodedPath).append('?');
+        template.sign(request.containerName, request.blobName, request.permissions, request.expiry, out);
+        return out;
+    }
+
+    private static void append(Appendable out, CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A blob to issue a URL for, with the permissions and expiry time of its SAS token.
+     */
+    public static final class BlobSasRequest {
+        private final String containerName;
+        private final String blobName;
+        private final String permissions;
+        private final OffsetDateTime expiry;
+        private final String encodedPath;
+
+        public BlobSasRequest(String containerName, String blobName, BlobSasPermission permissions,
+                              OffsetDateTime expiry) {
+            this.containerName = containerName;
+            this.blobName = blobName;
+            this.permissions = permissions.toString();
+            this.expiry = expiry;
+            this.encodedPath = Utility.urlEncode(containerName) + "/" + Utility.urlEncode(blobName);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.sas.BlobContainerSasPermission;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.common.sas.AccountSasPermission;
+import com.azure.storage.common.sas.AccountSasResourceType;
+import com.azure.storage.common.sas.AccountSasService;
+import com.azure.storage.common.sas.SasProtocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SasDefinitionSample extends KeyVaultSampleBase {
+    private String storageAccountName;
+    private String vaultUri;
+    private String vaultName;
+    private StorageAccount storageAccount;
+    private Vault vault;
+
+    public SasDefinitionSample() {
+        super();
+        setUpStorageAccount();
+    }
+
+
+    /**
+     * Creates an account sas definition, to manage storage account and its entities.
+     */
+    public void createAccountSasDefinition() throws UnsupportedEncodingException {
+        // In order to create an account sas definition, we have to first create a template. The
+        // template_uri for an account sas definition is the intended sas token signed with an arbitrary key.
+        // We create the generateSharedAccessSignature method in CloudStorageAccount to generate an account sas token.
+        SasSigner signer = sasTokenCache.signer(storageAccount);
+
+        //Create a new policy
+        AccountSasService accountSasService = AccountSasService.parse("bfqt");
+        AccountSasResourceType accountSasResourceType = AccountSasResourceType.parse("sco");
+        AccountSasPermission accountSasPermission = AccountSasPermission.parse("rwdlacup");
+        SasSigner.Template accountSasTemplate =
+                signer.accountSas(accountSasService, accountSasResourceType, accountSasPermission, null);
+        //Generate a signature based off of the policy and account, or reuse a recent one for the same policy.
+        String resource = "account/" + accountSasService + "/" + accountSasResourceType;
+        String sasSignature = sasTokenCache.getOrIssue(storageAccountName, resource, accountSasPermission.toString(),
+                null, Duration.ofDays(1), accountSasTemplate::sign);
+        System.out.println("Generated sasSignature " + sasSignature);
+
+        // Getting the shared client for the account, now authorized by the new acctSasToken
+        BlobServiceClient sasBlobServiceClient =
+                blobClients.sasClient(storageAccount.endPoints().primary().blob(), resource, sasSignature);
+        BlobContainerClient blobContainerClient = sasBlobServiceClient.getBlobContainerClient("cloudstorageblob");
+        if (!blobContainerClient.exists()) {
+            blobContainerClient.create();
+        }
+
+        // Creating a blob with the account storage token.
+        System.out.println("Creating container: " + blobContainerClient.getBlobContainerName());
+        BlockBlobClient blockBlobClient = blobContainerClient.getBlobClient("blobName").getBlockBlobClient();
+        String text = "test blob data";
+        System.out.printf("Uploading text: \"%s\" to blob%n", text);
+        blockBlobClient.upload(new ByteArrayInputStream(text.getBytes()), text.getBytes().length);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        blockBlobClient.download(outputStream);
+        System.out.println("Downloading text: " + new String(outputStream.toByteArray(),"UTF-8"));
+        blockBlobClient.delete();
+        System.out.println("Blob deleted");
+    }
+
+    /**
+     * Creates a service SAS definition with access to a blob container.
+     */
+    public void createBlobSasDefinition() throws UnsupportedEncodingException {
+
+        // Create the blob sas definition template
+        // The sas template uri for service sas definitions contains the storage entity uri with the template token
+        // This sample demonstrates constructing the template uri for a blob container, but a similar approach can
+        // be used for all other storage service, i.e. File, Queue, table
+
+        // Create a template sas token for a container
+        StorageSharedKeyCredential sas = sasTokenCache.accountKey(storageAccount);
+        // Note that the key passed in is just a dummy key such that we can generate the correct signature for the template.
+
+        BlobServiceClient blobServiceClient =
+                blobClients.sharedKeyClient(storageAccount.endPoints().primary().blob(), sas);
+        BlobContainerClient blobContainerClient
+                = blobServiceClient.getBlobContainerClient("cloudstorageblob");
+        if (!blobContainerClient.exists()) {
+            blobContainerClient.create();
+        }
+        String sasSignature = containerSas(blobContainerClient.getBlobContainerName());
+
+        blobServiceClient = blobClients.sasClient(storageAccount.endPoints().primary().blob(),
+                "container/" + blobContainerClient.getBlobContainerName(), sasSignature);
+        BlockBlobClient blockBlobClient =
+                blobServiceClient.getBlobContainerClient("cloudstorageblob")
+                        .getBlobClient("blobName")
+                        .getBlockBlobClient();
+
+        String text = "test blob data";
+        System.out.printf("Uploading text: \"%s\" to blob%n", text);
+        blockBlobClient.upload(new ByteArrayInputStream(text.getBytes()), text.getBytes().length);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        blockBlobClient.download(outputStream);
+        System.out.println("Downloading text: " + new String(outputStream.toByteArray(),"UTF-8"));
+
+    }
+
+    /**
+     * Uploads a file to a blob and downloads it again through a service SAS, transferring blocks in parallel.
+     */
+    public void transferFileWithBlobSas() throws IOException {
+        // Reuses the token issued for the container by createBlobSasDefinition.
+        BlockBlobAsyncClient blockBlobClient = blobClients
+                .sasAsyncClient(storageAccount.endPoints().primary().blob(), "container/cloudstorageblob",
+                        containerSas("cloudstorageblob"))
+                .getBlobContainerAsyncClient("cloudstorageblob")
+                .getBlobAsyncClient("largeBlobName")
+                .getBlockBlobAsyncClient();
+
+        Path source = Files.createTempFile("upload", ".bin");
+        Path destination = Files.createTempFile("download", ".bin");
+        try {
+            byte[] chunk = new byte[1024 * 1024];
+            try (OutputStream outputStream = Files.newOutputStream(source)) {
+                for (int i = 0; i < 32; i++) {
+                    ThreadLocalRandom.current().nextBytes(chunk);
+                    outputStream.write(chunk);
+                }
+            }
+            ParallelBlobTransfer transfer = new ParallelBlobTransfer()
+                    .withBlockSize(4 * 1024 * 1024)
+                    .withConcurrency(8);
+            System.out.printf("Uploading %d bytes to blob in parallel blocks%n", Files.size(source));
+            transfer.upload(blockBlobClient, source).block();
+            transfer.download(blockBlobClient, destination).block();
+            System.out.printf("Downloaded %d bytes from blob in parallel ranges%n", Files.size(destination));
+            blockBlobClient.delete().block();
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(destination);
+        }
+    }
+
+    /**
+     * Issues pre-signed read URLs for many blobs of the container in one call, as an API handing out download links
+     * would.
+     */
+    public void issueBlobSasUrls() throws IOException {
+        OffsetDateTime expiry = OffsetDateTime.now().plusHours(1);
+        BlobSasPermission readPermission = BlobSasPermission.parse("r");
+        List<SasBatchIssuer.BlobSasRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(new SasBatchIssuer.BlobSasRequest("cloudstorageblob", "reports/report" + i + ".csv",
+                    readPermission, expiry));
+        }
+        SasBatchIssuer sasBatchIssuer = new SasBatchIssuer(sasTokenCache.signer(storageAccount),
+                storageAccount.endPoints().primary().blob(), SasProtocol.HTTPS_ONLY);
+        StringBuilder urls = new StringBuilder(requests.size() * 256);
+        sasBatchIssuer.writeTo(requests, urls);
+        System.out.printf("Issued %d pre-signed blob URLs, the first is %s%n", requests.size(),
+                urls.substring(0, urls.indexOf("\n")));
+    }
+
+    // Returns a SAS token for the container, reusing a recently issued one if possible.
+    private String containerSas(String containerName) {
+        BlobContainerSasPermission containerSasPermission = BlobContainerSasPermission.parse("acdlrw");
+        SasSigner.Template containerSasTemplate = sasTokenCache.signer(storageAccount)
+                .containerSas(containerName, containerSasPermission, SasProtocol.HTTPS_HTTP);
+        return sasTokenCache.getOrIssue(storageAccountName, "container/" + containerName,
+                containerSasPermission.toString(), SasProtocol.HTTPS_HTTP, Duration.ofDays(1), containerSasTemplate::sign);
+    }
+
+    // This is the same method as the one in KeyVaultManagedStorage - just sets up a storage account.
+    private void setUpStorageAccount() {
+
+        storageAccountName = azureManagers.randomResourceName("storage", 15);
+
+        // Setting the storage acocunt can only be called by a user account with access to the keys of the storage account.
+        // Therefore, the provisioner grants the user that created the storage account access to the vault
+        // as well as the storage account. The account is put in one of the vaults shared by the samples.
+        StorageAccountProvisioner.ProvisionedAccount provisioned = new StorageAccountProvisioner(azureManagers, roleDefinitionResolver)
+                .withUpdater(storageAccountUpdater)
+                .withPlacement(vaultPlacement)
+                .withKeyPool(keyPool)
+                .provision(new StorageAccountProvisioner.AccountSpec(storageAccountName)
+                        .withKeyVaultServicePrincipalId("93c27d83-f79b-4cb2-8dd4-4aa716542e74") //This is the Azure Key Vault Service Principal
+                        .withBlobPublicAccess()
+                        .withSharedKeyAccess())
+                .block();
+        storageAccount = provisioned.storageAccount();
+        vault = provisioned.vault();
+        vaultName = vault.name();
+        vaultUri = vault.vaultUri();
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.http.HttpClient;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.sas.BlobContainerSasPermission;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.common.sas.AccountSasPermission;
+import com.azure.storage.common.sas.AccountSasResourceType;
+import com.azure.storage.common.sas.AccountSasService;
+import com.azure.storage.common.sas.AccountSasSignatureValues;
+import com.azure.storage.common.sas.SasProtocol;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Checks that SasSigner and SasBatchIssuer produce exactly the tokens and URLs the SDK clients produce. Runs in the
+ * test phase of the build, and fails it on the first difference.
+ *
+ * The expiries cover leap days, month and year ends, offsets other than UTC and fractions of a second, and the blob
+ * names cover virtual directories and characters that need encoding.
+ */
+public final class SasSignerCheck {
+
+    private static final String ACCOUNT_NAME = "checkaccount";
+    private static final String CONTAINER_NAME = "cloudstorageblob";
+
+    private static final List<OffsetDateTime> EXPIRIES = Arrays.asList(
+            OffsetDateTime.of(2024, 2, 29, 23, 59, 59, 0, ZoneOffset.UTC),
+            OffsetDateTime.of(2023, 12, 31, 23, 59, 59, 999_999_999, ZoneOffset.UTC),
+            OffsetDateTime.of(2100, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC),
+            OffsetDateTime.of(2025, 1, 1, 0, 30, 0, 0, ZoneOffset.ofHours(2)),
+            OffsetDateTime.now().plusHours(1));
+
+    private static final List<String> BLOB_NAMES = Arrays.asList(
+            "blob0", "reports/report0.csv", "reports/2024/q1 summary.csv", "data+backup/\u00e4&b=c.txt");
+
+    private SasSignerCheck() {
+    }
+
+    public static void main(String[] args) {
+        String accountKey = Base64.getEncoder().encodeToString("sas-signer-check-key".getBytes(StandardCharsets.UTF_8));
+        // Generating a SAS never sends a request, any attempt fails the check.
+        HttpClient offline = request -> Mono.error(new IllegalStateException("Refusing to send " + request.getUrl()));
+        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+                .endpoint("https://" + ACCOUNT_NAME + ".blob.core.windows.net")
+                .credential(new StorageSharedKeyCredential(ACCOUNT_NAME, accountKey))
+                .httpClient(offline)
+                .buildClient();
+        BlobContainerClient blobContainerClient = blobServiceClient.getBlobContainerClient(CONTAINER_NAME);
+        SasSigner signer = new SasSigner(ACCOUNT_NAME, accountKey);
+
+        AccountSasService services = AccountSasService.parse("bfqt");
+        AccountSasResourceType resourceTypes = AccountSasResourceType.parse("sco");
+        AccountSasPermission accountPermissions = AccountSasPermission.parse("rwdlacup");
+        BlobContainerSasPermission containerPermissions = BlobContainerSasPermission.parse("acdlrw");
+        BlobSasPermission blobPermissions = BlobSasPermission.parse("r");
+        SasSigner.Template accountSasTemplate = signer.accountSas(services, resourceTypes, accountPermissions, null);
+        SasSigner.Template containerSasTemplate = signer.containerSas(CONTAINER_NAME, containerPermissions,
+                SasProtocol.HTTPS_HTTP);
+        SasBatchIssuer sasBatchIssuer = new SasBatchIssuer(signer, blobServiceClient.getAccountUrl(), null);
+
+        int checks = 0;
+        for (OffsetDateTime expiry : EXPIRIES) {
+            check("account SAS expiring " + expiry,
+                    blobServiceClient.generateAccountSas(
+                            new AccountSasSignatureValues(expiry, accountPermissions, services, resourceTypes)),
+                    accountSasTemplate.sign(expiry));
+            check("container SAS expiring " + expiry,
+                    blobContainerClient.generateSas(new BlobServiceSasSignatureValues(expiry, containerPermissions)
+                            .setProtocol(SasProtocol.HTTPS_HTTP)),
+                    containerSasTemplate.sign(expiry));
+            checks += 2;
+
+            List<SasBatchIssuer.BlobSasRequest> requests = new ArrayList<>();
+            for (String blobName : BLOB_NAMES) {
+                requests.add(new SasBatchIssuer.BlobSasRequest(CONTAINER_NAME, blobName, blobPermissions, expiry));
+            }
+            List<String> urls = sasBatchIssuer.issue(requests);
+            for (int i = 0; i < BLOB_NAMES.size(); i++) {
+                BlobClient blobClient = blobContainerClient.getBlobClient(BLOB_NAMES.get(i));
+                check("blob URL of " + BLOB_NAMES.get(i) + " expiring " + expiry,
+                        blobClient.getBlobUrl() + "?" + blobClient.generateSas(
+                                new BlobServiceSasSignatureValues(expiry, blobPermissions)),
+                        urls.get(i));
+                checks++;
+            }
+        }
+        System.out.printf("SasSigner matches the SDK in %d checks%n", checks);
+    }
+
+    private static void check(String what, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("SasSigner differs from the SDK for the " + what
+                    + "\n  SDK:       " + expected + "\n  SasSigner: " + actual);
+        }
+    }
+}
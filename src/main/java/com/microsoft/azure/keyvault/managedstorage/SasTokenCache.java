@@ -0,0 +1,171 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.common.sas.SasProtocol;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caches storage account keys and the SAS tokens signed with them.
+ *
+ * A token is reused for requests with the same account, resource, permissions, protocol and lifetime bucket until the
+ * configured fraction of its lifetime has passed, so a reused token always has most of its lifetime left. Keys are
+ * fetched from ARM once per account and dropped, together with every token signed by them, when invalidate() is
+ * called after a key regeneration.
+ */
+public class SasTokenCache {
+
+    private static final LongAdder HITS = SampleMetrics.shared().counter("sas.cache.hits");
+    private static final LongAdder MISSES = SampleMetrics.shared().counter("sas.cache.misses");
+    private static final LatencyHistogram SIGN_LATENCY = SampleMetrics.shared().histogram("sas.sign");
+    private static final LatencyHistogram LIST_KEYS_LATENCY = SampleMetrics.shared().histogram("storageAccount.listKeys");
+
+    private final double reuseFraction;
+    private final Duration lifetimeBucket;
+    private final ConcurrentHashMap<String, AccountKey> accountKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SasKey, IssuedSas> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * @param reuseFraction the fraction of a token's lifetime during which it is handed out again
+     * @param lifetimeBucket requested lifetimes are rounded up to a multiple of this, so similar requests share tokens
+     */
+    public SasTokenCache(double reuseFraction, Duration lifetimeBucket) {
+        this.reuseFraction = reuseFraction;
+        this.lifetimeBucket = lifetimeBucket;
+    }
+
+    /**
+     * Returns the shared key credential for the account's first key, fetching the keys only on the first call.
+     */
+    public StorageSharedKeyCredential accountKey(StorageAccount storageAccount) {
+        return keysOf(storageAccount).credential;
+    }
+
+    /**
+     * Returns the SAS signer for the account's first key, fetching the keys only on the first call.
+     */
+    public SasSigner signer(StorageAccount storageAccount) {
+        return keysOf(storageAccount).signer;
+    }
+
+    private AccountKey keysOf(StorageAccount storageAccount) {
+        return accountKeys.computeIfAbsent(storageAccount.name(), accountName -> {
+            long start = System.nanoTime();
+            String key = storageAccount.getKeys().get(0).value();
+            LIST_KEYS_LATENCY.record(System.nanoTime() - start);
+            return new AccountKey(new StorageSharedKeyCredential(accountName, key), new SasSigner(accountName, key));
+        });
+    }
+
+    /**
+     * Returns a cached token for the request, or signs a new one by passing its expiry time to the signer.
+     *
+     * @param resource identifies what the token grants access to, e.g. the services and resource types of an account
+     * SAS or the container of a service SAS
+     */
+    public String getOrIssue(String accountName, String resource, String permissions, SasProtocol protocol,
+                             Duration lifetime, Function<OffsetDateTime, String> signer) {
+        Duration bucketedLifetime = bucket(lifetime);
+        SasKey key = new SasKey(accountName, resource, permissions, protocol, bucketedLifetime);
+        IssuedSas cached = tokens.get(key);
+        if (cached != null && cached.isReusable()) {
+            HITS.increment();
+            return cached.token;
+        }
+        return tokens.compute(key, (ignored, existing) -> {
+            if (existing != null && existing.isReusable()) {
+                HITS.increment();
+                return existing;
+            }
+            MISSES.increment();
+            OffsetDateTime now = OffsetDateTime.now();
+            OffsetDateTime expiry = now.plus(bucketedLifetime);
+            OffsetDateTime reuseUntil = now.plusNanos((long) (bucketedLifetime.toNanos() * reuseFraction));
+            long start = System.nanoTime();
+            String token = signer.apply(expiry);
+            SIGN_LATENCY.record(System.nanoTime() - start);
+            return new IssuedSas(token, reuseUntil);
+        }).token;
+    }
+
+    /**
+     * Forgets the keys of the account and every token signed with them. Call this after regenerating a key.
+     */
+    public void invalidate(String accountName) {
+        accountKeys.remove(accountName);
+        tokens.keySet().removeIf(key -> key.accountName.equals(accountName));
+    }
+
+    private Duration bucket(Duration lifetime) {
+        long bucketMillis = lifetimeBucket.toMillis();
+        long buckets = (lifetime.toMillis() + bucketMillis - 1) / bucketMillis;
+        return Duration.ofMillis(Math.max(1, buckets) * bucketMillis);
+    }
+
+    private static final class AccountKey {
+        private final StorageSharedKeyCredential credential;
+        private final SasSigner signer;
+
+        AccountKey(StorageSharedKeyCredential credential, SasSigner signer) {
+            this.credential = credential;
+            this.signer = signer;
+        }
+    }
+
+    private static final class IssuedSas {
+        private final String token;
+        private final OffsetDateTime reuseUntil;
+
+        IssuedSas(String token, OffsetDateTime reuseUntil) {
+            this.token = token;
+            this.reuseUntil = reuseUntil;
+        }
+
+        boolean isReusable() {
+            return OffsetDateTime.now().isBefore(reuseUntil);
+        }
+    }
+
+    private static final class SasKey {
+        private final String accountName;
+        private final String resource;
+        private final String permissions;
+        private final SasProtocol protocol;
+        private final Duration lifetime;
+
+        SasKey(String accountName, String resource, String permissions, SasProtocol protocol, Duration lifetime) {
+            this.accountName = accountName;
+            this.resource = resource;
+            this.permissions = permissions;
+            this.protocol = protocol;
+            this.lifetime = lifetime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SasKey)) {
+                return false;
+            }
+            SasKey other = (SasKey) o;
+            return accountName.equals(other.accountName)
+                    && resource.equals(other.resource)
+                    && permissions.equals(other.permissions)
+                    && protocol == other.protocol
+                    && lifetime.equals(other.lifetime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accountName, resource, permissions, protocol, lifetime);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.resourcemanager.storage.models.Encryption;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountEncryptionKeySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Inventory of the storage accounts in a resource group whose encryption key is managed by a vault.
+ *
+ * Accounts are listed by resource group rather than across the whole subscription, and pages are fetched lazily
+ * with a bounded number of pages requested ahead. refresh() builds an index from vault URI to accounts that later
+ * lookups answer from memory.
+ */
+public class StorageAccountInventory {
+
+    private static final int DEFAULT_PAGE_PREFETCH = 2;
+
+    private final AzureManagers azureManagers;
+    private final String resourceGroup;
+    private final int pagePrefetch;
+    private volatile Map<String, List<StorageAccount>> accountsByVaultUri;
+
+    public StorageAccountInventory(AzureManagers azureManagers, String resourceGroup) {
+        this(azureManagers, resourceGroup, DEFAULT_PAGE_PREFETCH);
+    }
+
+    public StorageAccountInventory(AzureManagers azureManagers, String resourceGroup, int pagePrefetch) {
+        this.azureManagers = azureManagers;
+        this.resourceGroup = resourceGroup;
+        this.pagePrefetch = pagePrefetch;
+    }
+
+    /**
+     * Streams the vault managed accounts of the resource group, requesting the next pages only as they are consumed.
+     */
+    public Flux<StorageAccount> streamVaultManagedAccounts() {
+        return vaultManaged(azureManagers.storage().storageAccounts()
+                .listByResourceGroupAsync(resourceGroup)
+                .byPage()
+                .concatMapIterable(PagedResponse::getValue, pagePrefetch));
+    }
+
+    /**
+     * Re-lists the resource group and replaces the vault URI index.
+     */
+    public Mono<Map<String, List<StorageAccount>>> refresh() {
+        return index(streamVaultManagedAccounts())
+                .transform(SampleMetrics.shared().timed("inventory.list"))
+                .doOnNext(snapshot -> accountsByVaultUri = snapshot);
+    }
+
+    static Flux<StorageAccount> vaultManaged(Flux<StorageAccount> storageAccounts) {
+        return storageAccounts.filter(storageAccount -> vaultUriOf(storageAccount) != null);
+    }
+
+    // Groups vault managed accounts by the normalized URI of their vault.
+    static Mono<Map<String, List<StorageAccount>>> index(Flux<StorageAccount> vaultManagedAccounts) {
+        return vaultManagedAccounts
+                .collect(ConcurrentHashMap<String, List<StorageAccount>>::new,
+                        (index, storageAccount) -> index
+                                .computeIfAbsent(vaultUriOf(storageAccount), ignored -> new CopyOnWriteArrayList<>())
+                                .add(storageAccount))
+                .map(Collections::unmodifiableMap);
+    }
+
+    /**
+     * Returns the accounts whose encryption key lives in the given vault, building the index on first use.
+     */
+    public List<StorageAccount> accountsForVault(String vaultUri) {
+        return accountsForVaultAsync(vaultUri).block();
+    }
+
+    /**
+     * Emits the accounts whose encryption key lives in the given vault, building the index on first use without
+     * blocking.
+     */
+    public Mono<List<StorageAccount>> accountsForVaultAsync(String vaultUri) {
+        return Mono.defer(() -> {
+            Map<String, List<StorageAccount>> index = accountsByVaultUri;
+            return index == null ? refresh() : Mono.just(index);
+        }).map(index -> {
+            List<StorageAccount> accounts = index.get(normalize(vaultUri));
+            return accounts == null ? Collections.<StorageAccount>emptyList() : new ArrayList<>(accounts);
+        });
+    }
+
+    /**
+     * Drops an account from the index, e.g. after it has been deleted.
+     */
+    public void remove(StorageAccount storageAccount) {
+        Map<String, List<StorageAccount>> index = accountsByVaultUri;
+        String vaultUri = vaultUriOf(storageAccount);
+        if (index != null && vaultUri != null && index.containsKey(vaultUri)) {
+            index.get(vaultUri).removeIf(indexed -> indexed.id().equalsIgnoreCase(storageAccount.id()));
+        }
+    }
+
+    // Returns the normalized URI of the vault holding the account's encryption key, or null if the key is not
+    // managed by a vault.
+    static String vaultUriOf(StorageAccount storageAccount) {
+        if (!StorageAccountEncryptionKeySource.MICROSOFT_KEYVAULT.equals(storageAccount.encryptionKeySource())) {
+            return null;
+        }
+        Encryption encryption = storageAccount.innerModel().encryption();
+        if (encryption == null || encryption.keyVaultProperties() == null) {
+            return null;
+        }
+        return normalize(encryption.keyVaultProperties().keyVaultUri());
+    }
+
+    // Vault URIs have the form https://{name}.vault.azure.net.
+    static String vaultNameOf(String vaultUri) {
+        String host = URI.create(vaultUri).getHost();
+        return host.substring(0, host.indexOf('.')).toLowerCase(Locale.ROOT);
+    }
+
+    static String normalize(String vaultUri) {
+        if (vaultUri == null) {
+            return null;
+        }
+        String normalized = vaultUri.toLowerCase(Locale.ROOT);
+        return normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+}
@@ -0,0 +1,313 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.models.Key;
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Provisions Key Vault managed storage accounts on the asynchronous resource manager APIs.
+ *
+ * For each account the storage account is created first, since both the role assignment and the vault access
+ * policy need its identity. The role assignment and the vault are then created concurrently, followed by the key
+ * and the encryption update. provisionAll runs many of these chains at once, bounded by the configured concurrency,
+ * and retries each step on its own when ARM throttles or fails transiently. With a VaultPlacement, accounts are put in
+ * shared vaults instead, and the vault names of the specs are not used.
+ */
+public class StorageAccountProvisioner {
+
+    private final AzureManagers azureManagers;
+    private final RoleDefinitionResolver roleDefinitionResolver;
+    private final SampleMetrics metrics = SampleMetrics.shared();
+    private StorageAccountUpdater updater = new StorageAccountUpdater(Duration.ofMinutes(5));
+    private KeyPool keyPool;
+    private VaultPlacement placement;
+    private int concurrency = 16;
+    private int maxRetries = 5;
+    private Duration retryBackoff = Duration.ofSeconds(2);
+
+    public StorageAccountProvisioner(AzureManagers azureManagers, RoleDefinitionResolver roleDefinitionResolver) {
+        this.azureManagers = azureManagers;
+        this.roleDefinitionResolver = roleDefinitionResolver;
+    }
+
+    /**
+     * Sets the maximum number of accounts provisioned at the same time.
+     */
+    public StorageAccountProvisioner withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the updater that applies the encryption settings, so that accounts it has seen recently aren't fetched
+     * again.
+     */
+    public StorageAccountProvisioner withUpdater(StorageAccountUpdater updater) {
+        this.updater = updater;
+        return this;
+    }
+
+    /**
+     * Sets a pool to take the encryption keys from instead of creating each one. The accounts are then encrypted with
+     * pooled keys, whose names are generated, and the key names of the specs are not used.
+     */
+    public StorageAccountProvisioner withKeyPool(KeyPool keyPool) {
+        this.keyPool = keyPool;
+        return this;
+    }
+
+    /**
+     * Sets the placement that puts the accounts in shared vaults instead of creating a vault for each. Accounts in
+     * the same vault need keys of their own, so the specs should have distinct key names, or a key pool be set.
+     */
+    public StorageAccountProvisioner withPlacement(VaultPlacement placement) {
+        this.placement = placement;
+        return this;
+    }
+
+    /**
+     * Sets how often a single step is retried, and the initial back-off between attempts.
+     */
+    public StorageAccountProvisioner withRetry(int maxRetries, Duration retryBackoff) {
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        return this;
+    }
+
+    /**
+     * Provisions every account in the list. Results are emitted as each account completes, not in input order.
+     */
+    public Flux<ProvisionedAccount> provisionAll(List<AccountSpec> specs) {
+        return Flux.fromIterable(specs)
+                .flatMap(this::provision, concurrency);
+    }
+
+    /**
+     * Provisions a single account.
+     */
+    public Mono<ProvisionedAccount> provision(AccountSpec spec) {
+        // Fixed up front so that a retried role assignment reuses the same name.
+        String roleAssignmentName = UUID.randomUUID().toString();
+
+        // Checked before anything is created, so an incomplete spec doesn't leave a storage account behind.
+        return Mono.fromRunnable(spec::checkComplete)
+                .then(createStorageAccount(spec))
+                .flatMap(storageAccount -> Mono.zip(
+                        assignKeyOperatorRole(spec, storageAccount.id(), roleAssignmentName)
+                                .then(Mono.just(storageAccount)),
+                        (placement != null
+                                ? placeVault(spec, storageAccount.innerModel().identity().principalId())
+                                : createVault(spec, storageAccount.innerModel().identity().principalId()))
+                                .flatMap(vault -> createKey(spec, vault)
+                                        .map(key -> new ProvisionedAccount(storageAccount, vault, key)))))
+                .flatMap(tuple -> enableEncryption(spec, tuple.getT1(), tuple.getT2().vault().vaultUri(), tuple.getT2().key().name())
+                        .map(storageAccount -> new ProvisionedAccount(storageAccount, tuple.getT2().vault(), tuple.getT2().key())))
+                .transform(metrics.timed("provision.account"));
+    }
+
+    // Each step below is retried on its own and timed including its retries. FleetReconciler runs them one by one
+    // to resume a partly provisioned account.
+
+    Mono<StorageAccount> createStorageAccount(AccountSpec spec) {
+        return withRetry(() -> azureManagers.storage()
+                .storageAccounts().define(spec.storageAccountName())
+                .withRegion(AccessTokenUtils.VAULT_REGION)
+                .withExistingResourceGroup(AccessTokenUtils.RESOURCE_GROUP)
+                .withFileEncryption()
+                .withBlobEncryption()
+                .withGeneralPurposeAccountKindV2()
+                .withSystemAssignedManagedServiceIdentity()
+                .createAsync()
+                .doOnSubscribe(ignored -> System.out.println("Creating new storage account " + spec.storageAccountName())))
+                .doOnNext(updater::observed)
+                .transform(metrics.timed("provision.storageAccount.create"));
+    }
+
+    // The key vault service must be given the "Storage Account Key Operator Service Role" on
+    // the storage account before the storage account can be added to the vault. The role is looked up within the
+    // retried step, so a transient lookup failure is retried too, and a role that doesn't exist fails the account
+    // here instead of when it is added to the vault.
+    Mono<?> assignKeyOperatorRole(AccountSpec spec, String storageAccountId, String roleAssignmentName) {
+        String roleName = RoleDefinitionResolver.STORAGE_ACCOUNT_KEY_OPERATOR_SERVICE_ROLE;
+        return withRetry(() -> roleDefinitionResolver.resolveIdAsync(roleName)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("The role definition " + roleName + " doesn't exist")))
+                .flatMap(roleDefinitionId -> azureManagers.authorization().roleAssignments()
+                        .define(roleAssignmentName) //Needs to be a UUID formatted String
+                        .forObjectId(spec.keyVaultServicePrincipalId()) //This is the Azure Key Vault Service Principal
+                        .withRoleDefinition(roleDefinitionId)
+                        .withScope(storageAccountId)
+                        .createAsync()
+                        .doOnSubscribe(ignored -> System.out.println(
+                                "Granting Azure Key Vault the operator service role on the storage account " + spec.storageAccountName()))))
+                .transform(metrics.timed("provision.roleAssignment.create"));
+    }
+
+    Mono<Vault> createVault(AccountSpec spec, String storageAccountPrincipalId) {
+        return withRetry(() -> VaultPlacement.newVault(azureManagers.keyVault(), spec.vaultName(),
+                Collections.singletonList(storageAccountPrincipalId)))
+                .transform(metrics.timed("provision.vault.create"));
+    }
+
+    // Lets the identity of an account that was created again use the keys of the vault it had before.
+    Mono<Vault> grantVaultAccess(Vault vault, String storageAccountPrincipalId) {
+        return withRetry(() -> VaultPlacement.grantKeyAccess(vault, Collections.singletonList(storageAccountPrincipalId)))
+                .transform(metrics.timed("provision.vault.grant"));
+    }
+
+    private Mono<Vault> placeVault(AccountSpec spec, String storageAccountPrincipalId) {
+        return withRetry(() -> placement.place(spec.storageAccountName(), storageAccountPrincipalId))
+                .transform(metrics.timed("provision.vault.place"));
+    }
+
+    Mono<Key> createKey(AccountSpec spec, Vault vault) {
+        return withRetry(() -> keyPool != null ? keyPool.take(vault) : KeyPool.newKey(vault, spec.keyName()))
+                .transform(metrics.timed("provision.key.create"));
+    }
+
+    // Only sends the update if the account isn't already encrypted with the key, e.g. when resuming.
+    Mono<StorageAccount> enableEncryption(AccountSpec spec, StorageAccount storageAccount, String vaultUri, String keyName) {
+        StorageAccountUpdater.DesiredState desired = new StorageAccountUpdater.DesiredState()
+                .withEncryptionKeyFromKeyVault(vaultUri, keyName);
+        if (spec.isBlobPublicAccessEnabled()) {
+            desired.withBlobPublicAccess(true);
+        }
+        if (spec.isSharedKeyAccessEnabled()) {
+            desired.withSharedKeyAccess(true);
+        }
+        return withRetry(() -> updater.ensure(storageAccount, desired)
+                .doOnSubscribe(ignored -> System.out.printf("Adding storage account %s to vault %s%n",
+                        storageAccount.name(), vaultUri)))
+                .transform(metrics.timed("provision.encryption.update"));
+    }
+
+    void observed(StorageAccount storageAccount) {
+        updater.observed(storageAccount);
+    }
+
+    // Each attempt rebuilds the request, so a retry never reuses the state of a failed definition.
+    private <T> Mono<T> withRetry(Supplier<Mono<T>> step) {
+        return Mono.defer(step).retryWhen(Retry.backoff(maxRetries, retryBackoff)
+                .filter(HttpErrors::isTransient));
+    }
+
+    /**
+     * Describes one storage account and the vault that manages its encryption key.
+     */
+    public static class AccountSpec {
+        private final String storageAccountName;
+        private final String vaultName;
+        private String keyName = "key1";
+        private String keyVaultServicePrincipalId = AccessTokenUtils.KEY_VAULT_SERVICE_PRINCIPAL_ID;
+        private boolean blobPublicAccessEnabled;
+        private boolean sharedKeyAccessEnabled;
+
+        public AccountSpec(String storageAccountName, String vaultName) {
+            this.storageAccountName = requireValue("storage account name", storageAccountName);
+            this.vaultName = vaultName;
+        }
+
+        /**
+         * Describes an account whose vault is chosen by the provisioner's placement.
+         */
+        public AccountSpec(String storageAccountName) {
+            this(storageAccountName, null);
+        }
+
+        public AccountSpec withKeyName(String keyName) {
+            this.keyName = requireValue("key name", keyName);
+            return this;
+        }
+
+        public AccountSpec withKeyVaultServicePrincipalId(String keyVaultServicePrincipalId) {
+            this.keyVaultServicePrincipalId = requireValue("Key Vault service principal id", keyVaultServicePrincipalId);
+            return this;
+        }
+
+        public AccountSpec withBlobPublicAccess() {
+            this.blobPublicAccessEnabled = true;
+            return this;
+        }
+
+        public AccountSpec withSharedKeyAccess() {
+            this.sharedKeyAccessEnabled = true;
+            return this;
+        }
+
+        public String storageAccountName() {
+            return storageAccountName;
+        }
+
+        public String vaultName() {
+            return vaultName;
+        }
+
+        public String keyName() {
+            return keyName;
+        }
+
+        public String keyVaultServicePrincipalId() {
+            return keyVaultServicePrincipalId;
+        }
+
+        public boolean isBlobPublicAccessEnabled() {
+            return blobPublicAccessEnabled;
+        }
+
+        public boolean isSharedKeyAccessEnabled() {
+            return sharedKeyAccessEnabled;
+        }
+
+        // The service principal id defaults to KEY_VAULT_SERVICE_PRINCIPAL_ID and may still be set after the spec is
+        // created, so it is checked when the spec is used rather than in the constructor.
+        void checkComplete() {
+            if (keyVaultServicePrincipalId == null) {
+                throw new IllegalArgumentException("The spec of storage account " + storageAccountName
+                        + " has no Key Vault service principal id; set KEY_VAULT_SERVICE_PRINCIPAL_ID or call"
+                        + " withKeyVaultServicePrincipalId");
+            }
+        }
+
+        private static String requireValue(String name, String value) {
+            if (value == null || value.isEmpty()) {
+                throw new IllegalArgumentException("The " + name + " of an account spec can't be empty");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The resources created for one account spec.
+     */
+    public static class ProvisionedAccount {
+        private final StorageAccount storageAccount;
+        private final Vault vault;
+        private final Key key;
+
+        ProvisionedAccount(StorageAccount storageAccount, Vault vault, Key key) {
+            this.storageAccount = storageAccount;
+            this.vault = vault;
+            this.key = key;
+        }
+
+        public StorageAccount storageAccount() {
+            return storageAccount;
+        }
+
+        public Vault vault() {
+            return vault;
+        }
+
+        public Key key() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.storage.models.Encryption;
+import com.azure.resourcemanager.storage.models.KeyVaultProperties;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountEncryptionKeySource;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Brings storage accounts to a desired state, writing to ARM only when something differs.
+ *
+ * ensure() compares the account's model with the desired encryption key and access settings. All differences are
+ * applied in one update, and nothing is sent if there are none. The storage resource provider doesn't return ETags
+ * for accounts, so a model is trusted for the configured maximum age after it was last fetched, created or updated,
+ * and is refreshed with a GET before comparing once it is older.
+ */
+public class StorageAccountUpdater {
+
+    private static final LongAdder APPLIED = SampleMetrics.shared().counter("storageAccount.update.applied");
+    private static final LongAdder SKIPPED = SampleMetrics.shared().counter("storageAccount.update.skipped");
+
+    private final long maxAgeNanos;
+    private final ConcurrentHashMap<String, Long> observedAt = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxAge how long a model is compared without refreshing it first
+     */
+    public StorageAccountUpdater(Duration maxAge) {
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    /**
+     * Notes that the model of the account is current, e.g. because it was just created or listed.
+     */
+    public void observed(StorageAccount storageAccount) {
+        observedAt.put(storageAccount.id().toLowerCase(Locale.ROOT), System.nanoTime());
+    }
+
+    /**
+     * Applies the desired state to the account if it differs, and emits the account's current model.
+     */
+    public Mono<StorageAccount> ensure(StorageAccount storageAccount, DesiredState desired) {
+        return Mono.defer(() -> {
+            Long observed = observedAt.get(storageAccount.id().toLowerCase(Locale.ROOT));
+            if (observed != null && System.nanoTime() - observed < maxAgeNanos) {
+                return Mono.just(storageAccount);
+            }
+            return storageAccount.refreshAsync()
+                    .transform(SampleMetrics.shared().timed("storageAccount.refresh"))
+                    .doOnNext(this::observed);
+        }).flatMap(current -> {
+            List<String> changes = new ArrayList<>();
+            StorageAccount.Update update = desired.diff(current, changes);
+            if (update == null) {
+                SKIPPED.increment();
+                return Mono.just(current);
+            }
+            APPLIED.increment();
+            return update.applyAsync()
+                    .transform(SampleMetrics.shared().timed("storageAccount.update"))
+                    .doOnSubscribe(ignored -> System.out.printf("Updating %s of storage account %s%n",
+                            String.join(", ", changes), current.name()))
+                    .doOnNext(this::observed);
+        });
+    }
+
+    /**
+     * The settings a storage account should have. Settings that aren't set are left as they are.
+     */
+    public static final class DesiredState {
+        private String vaultUri;
+        private String keyName;
+        private Boolean blobPublicAccess;
+        private Boolean sharedKeyAccess;
+
+        /**
+         * Encrypts the account with the latest version of the key in the vault.
+         */
+        public DesiredState withEncryptionKeyFromKeyVault(String vaultUri, String keyName) {
+            this.vaultUri = vaultUri;
+            this.keyName = keyName;
+            return this;
+        }
+
+        public DesiredState withBlobPublicAccess(boolean blobPublicAccess) {
+            this.blobPublicAccess = blobPublicAccess;
+            return this;
+        }
+
+        public DesiredState withSharedKeyAccess(boolean sharedKeyAccess) {
+            this.sharedKeyAccess = sharedKeyAccess;
+            return this;
+        }
+
+        // Returns one update covering every difference, naming each in changes, or null if there is none.
+        private StorageAccount.Update diff(StorageAccount current, List<String> changes) {
+            StorageAccount.Update update = null;
+            if (vaultUri != null && !isEncryptedWith(current)) {
+                update = current.update().withEncryptionKeyFromKeyVault(vaultUri, keyName, null);
+                changes.add("encryption key");
+            }
+            if (blobPublicAccess != null && blobPublicAccess != current.isBlobPublicAccessAllowed()) {
+                update = update != null ? update : current.update();
+                update = blobPublicAccess ? update.enableBlobPublicAccess() : update.disableBlobPublicAccess();
+                changes.add("blob public access");
+            }
+            if (sharedKeyAccess != null && sharedKeyAccess != current.isSharedKeyAccessAllowed()) {
+                update = update != null ? update : current.update();
+                update = sharedKeyAccess ? update.enableSharedKeyAccess() : update.disableSharedKeyAccess();
+                changes.add("shared key access");
+            }
+            return update;
+        }
+
+        // Vault URIs are compared as StorageAccountInventory indexes them; key names are case-insensitive.
+        private boolean isEncryptedWith(StorageAccount current) {
+            if (!StorageAccountEncryptionKeySource.MICROSOFT_KEYVAULT.equals(current.encryptionKeySource())) {
+                return false;
+            }
+            Encryption encryption = current.innerModel().encryption();
+            KeyVaultProperties keyVaultProperties = encryption == null ? null : encryption.keyVaultProperties();
+            return keyVaultProperties != null
+                    && StorageAccountInventory.normalize(vaultUri)
+                            .equals(StorageAccountInventory.normalize(keyVaultProperties.keyVaultUri()))
+                    && keyName.equalsIgnoreCase(keyVaultProperties.keyName())
+                    && (keyVaultProperties.keyVersion() == null || keyVaultProperties.keyVersion().isEmpty());
+        }
+    }
+}
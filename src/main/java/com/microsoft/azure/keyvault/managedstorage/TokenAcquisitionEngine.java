@@ -0,0 +1,100 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.microsoft.aad.adal4j.AuthenticationContext;
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import com.microsoft.aad.adal4j.DeviceCode;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived engine that acquires tokens from Azure Active Directory.
+ *
+ * One bounded executor and one AuthenticationContext per authority are created on first use and reused for every
+ * acquisition afterwards, so repeated requests skip thread creation and context setup. Call close() once the
+ * process no longer needs new tokens.
+ */
+public final class TokenAcquisitionEngine implements AutoCloseable {
+
+    private static final TokenAcquisitionEngine SHARED = new TokenAcquisitionEngine(3);
+
+    private final ExecutorService service;
+    private final ConcurrentHashMap<String, AuthenticationContext> contexts = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public TokenAcquisitionEngine(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        service = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "token-acquisition-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the engine shared by the samples in this process.
+     */
+    public static TokenAcquisitionEngine shared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts the device code flow for the resource. The user has to complete the sign in before the code is
+     * redeemed with acquireTokenByDeviceCode.
+     */
+    public DeviceCode acquireDeviceCode(String authority, String resource, String clientId)
+            throws MalformedURLException, InterruptedException, ExecutionException {
+        return contextFor(authority).acquireDeviceCode(clientId, resource, null).get();
+    }
+
+    public AuthenticationResult acquireTokenByDeviceCode(String authority, DeviceCode code)
+            throws MalformedURLException, InterruptedException, ExecutionException {
+        return contextFor(authority).acquireTokenByDeviceCode(code, null).get();
+    }
+
+    /**
+     * Redeems a refresh token for a new access token. This never prompts the user.
+     */
+    public AuthenticationResult acquireTokenByRefreshToken(String authority, String refreshToken, String resource, String clientId)
+            throws MalformedURLException, InterruptedException, ExecutionException {
+        return contextFor(authority).acquireTokenByRefreshToken(refreshToken, clientId, resource, null).get();
+    }
+
+    private AuthenticationContext contextFor(String authority) throws MalformedURLException {
+        if (closed) {
+            throw new IllegalStateException("The token acquisition engine has been closed");
+        }
+        AuthenticationContext context = contexts.get(authority);
+        if (context == null) {
+            AuthenticationContext created = new AuthenticationContext(authority, false, service);
+            context = contexts.putIfAbsent(authority, created);
+            if (context == null) {
+                context = created;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Stops accepting new acquisitions and waits briefly for in-flight ones to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        contexts.clear();
+        service.shutdown();
+        try {
+            if (!service.awaitTermination(10, TimeUnit.SECONDS)) {
+                service.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
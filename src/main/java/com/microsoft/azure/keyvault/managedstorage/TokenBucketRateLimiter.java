@@ -0,0 +1,81 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter for ARM write calls.
+ *
+ * Permits are reserved rather than polled, so callers know right away how long to wait. When the service throttles,
+ * onThrottled stops handing out permits until the Retry-After period has passed and halves the rate; every success
+ * afterwards raises the rate again in small steps until the configured maximum is reached.
+ */
+public class TokenBucketRateLimiter {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxPermitsPerSecond;
+    private final double minPermitsPerSecond;
+    private final double burst;
+    private double permitsPerSecond;
+    private double storedPermits;
+    private long nextFreeNanos = System.nanoTime();
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        this.maxPermitsPerSecond = permitsPerSecond;
+        this.minPermitsPerSecond = permitsPerSecond / 32;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.storedPermits = burst;
+    }
+
+    /**
+     * Completes once a permit is available.
+     */
+    public Mono<Void> acquire() {
+        return Mono.defer(() -> {
+            long waitNanos = reserve();
+            return waitNanos == 0 ? Mono.<Void>empty() : Mono.delay(Duration.ofNanos(waitNanos)).then();
+        });
+    }
+
+    /**
+     * Reserves one permit and returns the number of nanoseconds to wait before using it.
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(burst, storedPermits + (now - nextFreeNanos) * permitsPerSecond / NANOS_PER_SECOND);
+            nextFreeNanos = now;
+        }
+        long waitNanos = nextFreeNanos - now;
+        double fromStored = Math.min(1, storedPermits);
+        storedPermits -= fromStored;
+        nextFreeNanos += (long) ((1 - fromStored) * NANOS_PER_SECOND / permitsPerSecond);
+        return waitNanos;
+    }
+
+    /**
+     * Slows down after a throttled response: no permits are handed out until retryAfter has passed, stored permits
+     * are dropped and the rate is halved.
+     */
+    public synchronized void onThrottled(Duration retryAfter) {
+        long resumeAt = System.nanoTime() + retryAfter.toNanos();
+        nextFreeNanos = Math.max(nextFreeNanos, resumeAt);
+        storedPermits = 0;
+        permitsPerSecond = Math.max(minPermitsPerSecond, permitsPerSecond / 2);
+    }
+
+    /**
+     * Speeds back up towards the configured rate after a successful call.
+     */
+    public synchronized void onSuccess() {
+        permitsPerSecond = Math.min(maxPermitsPerSecond, permitsPerSecond + maxPermitsPerSecond / 20);
+    }
+
+    public synchronized double currentPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
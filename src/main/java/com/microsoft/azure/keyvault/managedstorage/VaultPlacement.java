@@ -0,0 +1,357 @@
+package com.microsoft.azure.keyvault.managedstorage;
+
+import com.azure.resourcemanager.keyvault.KeyVaultManager;
+import com.azure.resourcemanager.keyvault.models.AccessPolicy;
+import com.azure.resourcemanager.keyvault.models.KeyPermissions;
+import com.azure.resourcemanager.keyvault.models.Vault;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Places storage accounts in a pool of shared vaults instead of giving each account a vault of its own.
+ *
+ * Accounts are assigned with consistent hashing: every vault owns a number of points on a hash ring, and an account
+ * goes to the first vault after its own hash that still has room, so no vault holds more than the configured
+ * capacity. An account keeps its vault once placed, since moving it would mean re-encrypting it with a key from
+ * another vault. When every vault is full a new one is added to the ring, which only changes where later accounts
+ * go. Vaults are created when the first account is placed in them.
+ *
+ * With an inventory, the vaults of the resource group that already hold account keys join the ring, with their
+ * accounts, before the first account is placed, so a new process fills them up before it creates vaults of its own.
+ * Deleted accounts and vaults are reported through release and removeVault, as BulkTeardown does, so that their room
+ * is reused.
+ *
+ * Each account's managed identity needs an access policy on its vault. Grants for the same vault are batched: while
+ * one update of the vault is in flight, further grants queue up and are applied together in the next one. The
+ * resource manager replaces a vault's access policies as a whole, so the vaults of a placement should only be
+ * updated through it.
+ */
+public class VaultPlacement {
+
+    // A vault holds at most 1024 access policies, one of which is the user's.
+    private static final int MAX_CAPACITY = 1023;
+
+    private final AzureManagers azureManagers;
+    private final int capacity;
+    private final Supplier<String> vaultNames;
+    private final SampleMetrics metrics = SampleMetrics.shared();
+    private int minimumShards = 1;
+    private int virtualNodes = 64;
+    private Mono<Void> seeded = Mono.empty();
+
+    // Guarded by this.
+    private final TreeMap<Long, Shard> ring = new TreeMap<>();
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<String, Shard> placements = new HashMap<>();
+
+    /**
+     * @param azureManagers the managers the vaults are created and updated with
+     * @param capacity the maximum number of accounts placed in one vault
+     * @param vaultNames supplies the name of each vault that is added
+     */
+    public VaultPlacement(AzureManagers azureManagers, int capacity, Supplier<String> vaultNames) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        this.azureManagers = azureManagers;
+        this.capacity = capacity;
+        this.vaultNames = vaultNames;
+    }
+
+    /**
+     * Sets the number of vaults accounts are spread over before any of them is full.
+     */
+    public VaultPlacement withMinimumShards(int minimumShards) {
+        this.minimumShards = minimumShards;
+        return this;
+    }
+
+    /**
+     * Sets the number of points each vault owns on the ring. More points spread the accounts more evenly.
+     */
+    public VaultPlacement withVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        return this;
+    }
+
+    /**
+     * Sets the inventory the existing vaults are listed from before the first account is placed. A failed listing is
+     * tried again by the next placement.
+     */
+    public VaultPlacement withInventory(StorageAccountInventory inventory) {
+        Duration forever = Duration.ofMillis(Long.MAX_VALUE);
+        this.seeded = Mono.defer(inventory::refresh)
+                .doOnNext(this::seed)
+                .then()
+                .cache(ignored -> forever, error -> Duration.ZERO, () -> forever);
+        return this;
+    }
+
+    /**
+     * Emits the vault the account is placed in, once the vault exists and the account's identity may wrap and unwrap
+     * its keys. Placing an account again emits the same vault.
+     */
+    public Mono<Vault> place(String storageAccountName, String storageAccountPrincipalId) {
+        return seeded.then(Mono.defer(() -> shardOf(storageAccountName).grant(storageAccountPrincipalId)));
+    }
+
+    /**
+     * Frees the room of an account that has been deleted. Nothing happens if the account wasn't placed.
+     */
+    public synchronized void release(String storageAccountName) {
+        Shard shard = placements.remove(storageAccountName);
+        if (shard != null) {
+            shard.load--;
+        }
+    }
+
+    /**
+     * Drops a vault that has been deleted from the ring, with the accounts placed in it, so that later accounts go to
+     * the other vaults or a new one.
+     */
+    public synchronized void removeVault(String vaultName) {
+        shards.removeIf(shard -> shard.vaultName.equalsIgnoreCase(vaultName));
+        ring.values().removeIf(shard -> shard.vaultName.equalsIgnoreCase(vaultName));
+        placements.values().removeIf(shard -> shard.vaultName.equalsIgnoreCase(vaultName));
+    }
+
+    /**
+     * Returns the number of accounts placed in each vault, by vault name, in the order the vaults were added.
+     */
+    public synchronized Map<String, Integer> loads() {
+        Map<String, Integer> loads = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            loads.put(shard.vaultName, shard.load);
+        }
+        return loads;
+    }
+
+    /**
+     * Creates a vault the user may do anything in, and whose keys the given storage account identities may wrap and
+     * unwrap with.
+     */
+    static Mono<Vault> newVault(KeyVaultManager keyVaultManager, String vaultName,
+                                Collection<String> storageAccountPrincipalIds) {
+        // Setting the storage account can only be called by a user account with access to the keys of the storage account.
+        // Therefore, we grant the user that created the storage account access to the vault
+        // as well as the storage account.
+        Vault.DefinitionStages.WithCreate definition = keyVaultManager
+                .vaults().define(vaultName)
+                .withRegion(AccessTokenUtils.VAULT_REGION)
+                .withExistingResourceGroup(AccessTokenUtils.RESOURCE_GROUP)
+                .defineAccessPolicy()
+                .forObjectId(AccessTokenUtils.getUserOid())
+                .allowSecretAllPermissions()
+                .allowStorageAllPermissions()
+                .allowCertificateAllPermissions()
+                .allowKeyAllPermissions()
+                .attach();
+        for (String principalId : storageAccountPrincipalIds) {
+            definition = definition.defineAccessPolicy()
+                    .forObjectId(principalId)
+                    .allowKeyPermissions(KeyPermissions.UNWRAP_KEY, KeyPermissions.WRAP_KEY, KeyPermissions.GET)
+                    .attach();
+        }
+        return definition
+                .withPurgeProtectionEnabled()
+                .withSoftDeleteEnabled()
+                .createAsync()
+                .doOnSubscribe(ignored -> System.out.println("Creating new vault " + vaultName));
+    }
+
+    // Identities that already have a policy are skipped, so an update is only sent if one of them is new.
+    static Mono<Vault> grantKeyAccess(Vault vault, Collection<String> storageAccountPrincipalIds) {
+        Set<String> missing = new LinkedHashSet<>(storageAccountPrincipalIds);
+        for (AccessPolicy accessPolicy : vault.accessPolicies()) {
+            missing.remove(accessPolicy.objectId());
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(vault);
+        }
+        Vault.Update update = vault.update();
+        for (String principalId : missing) {
+            update = update.defineAccessPolicy()
+                    .forObjectId(principalId)
+                    .allowKeyPermissions(KeyPermissions.UNWRAP_KEY, KeyPermissions.WRAP_KEY, KeyPermissions.GET)
+                    .attach();
+        }
+        return update.applyAsync()
+                .transform(SampleMetrics.shared().timed("vaultPlacement.grant"))
+                .doOnSubscribe(ignored -> System.out.printf("Granting %d storage accounts access to vault %s%n",
+                        missing.size(), vault.name()));
+    }
+
+    // Adds the vaults to the ring with the accounts already in them. A vault may hold more accounts than the capacity,
+    // it then just takes no more.
+    synchronized void seed(Map<String, List<StorageAccount>> accountsByVaultUri) {
+        accountsByVaultUri.forEach((vaultUri, storageAccounts) -> {
+            String vaultName = StorageAccountInventory.vaultNameOf(vaultUri);
+            Shard shard = null;
+            for (Shard existing : shards) {
+                if (existing.vaultName.equalsIgnoreCase(vaultName)) {
+                    shard = existing;
+                }
+            }
+            if (shard == null) {
+                shard = addShard(vaultName, true);
+            }
+            for (StorageAccount storageAccount : storageAccounts) {
+                if (placements.putIfAbsent(storageAccount.name(), shard) == null) {
+                    shard.load++;
+                }
+            }
+        });
+    }
+
+    private synchronized Shard shardOf(String storageAccountName) {
+        Shard placed = placements.get(storageAccountName);
+        if (placed != null) {
+            return placed;
+        }
+        while (shards.size() < minimumShards) {
+            addShard(vaultNames.get(), false);
+        }
+        Shard shard = firstWithRoom(hash(storageAccountName));
+        if (shard == null) {
+            shard = addShard(vaultNames.get(), false);
+        }
+        shard.load++;
+        placements.put(storageAccountName, shard);
+        return shard;
+    }
+
+    // Walks the ring clockwise from the hash, wrapping around once.
+    private Shard firstWithRoom(long hash) {
+        for (Shard shard : ring.tailMap(hash).values()) {
+            if (shard.load < capacity) {
+                return shard;
+            }
+        }
+        for (Shard shard : ring.headMap(hash).values()) {
+            if (shard.load < capacity) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private Shard addShard(String vaultName, boolean exists) {
+        Shard shard = new Shard(vaultName, exists);
+        shards.add(shard);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(shard.vaultName + "#" + i), shard);
+        }
+        return shard;
+    }
+
+    // FNV-1a with a final mix, so that names differing only in their last characters land far apart on the ring.
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final class Shard {
+        private final String vaultName;
+        // Whether the vault existed before it was added, so it is fetched rather than created.
+        private final boolean exists;
+        // Guarded by the placement.
+        private int load;
+        // Guarded by this shard.
+        private final List<Grant> pending = new ArrayList<>();
+        private boolean applying;
+        private Vault vault;
+
+        Shard(String vaultName, boolean exists) {
+            this.vaultName = vaultName;
+            this.exists = exists;
+        }
+
+        Mono<Vault> grant(String principalId) {
+            Grant grant = new Grant(principalId);
+            boolean apply;
+            synchronized (this) {
+                pending.add(grant);
+                apply = !applying;
+                applying = true;
+            }
+            if (apply) {
+                applyPending();
+            }
+            return grant.result.asMono();
+        }
+
+        // Creates the vault with every queued identity, or adds their policies to it in one update. A vault that
+        // existed before is fetched for its first update instead, since creating it again would replace its policies.
+        // Grants that arrive meanwhile are applied next. A failed batch fails its grants only; the next batch tries
+        // again. The requests are built inside the Mono, so an error while building them fails the batch as well,
+        // instead of leaving the shard applying forever.
+        private void applyPending() {
+            List<Grant> batch;
+            Vault current;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    applying = false;
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                current = vault;
+            }
+            List<String> principalIds = new ArrayList<>();
+            for (Grant grant : batch) {
+                principalIds.add(grant.principalId);
+            }
+            Mono<Vault> applied;
+            if (current != null) {
+                applied = Mono.defer(() -> grantKeyAccess(current, principalIds));
+            } else if (exists) {
+                applied = Mono.defer(() -> azureManagers.keyVault().vaults()
+                        .getByResourceGroupAsync(AccessTokenUtils.RESOURCE_GROUP, vaultName))
+                        .flatMap(existing -> grantKeyAccess(existing, principalIds));
+            } else {
+                applied = Mono.defer(() -> newVault(azureManagers.keyVault(), vaultName, principalIds))
+                        .transform(metrics.timed("vaultPlacement.create"));
+            }
+            applied.subscribe(updated -> {
+                synchronized (this) {
+                    vault = updated;
+                }
+                batch.forEach(grant -> grant.result.tryEmitValue(updated));
+                applyPending();
+            }, error -> {
+                batch.forEach(grant -> grant.result.tryEmitError(error));
+                applyPending();
+            });
+        }
+    }
+
+    private static final class Grant {
+        private final String principalId;
+        private final Sinks.One<Vault> result = Sinks.one();
+
+        Grant(String principalId) {
+            this.principalId = principalId;
+        }
+    }
+}